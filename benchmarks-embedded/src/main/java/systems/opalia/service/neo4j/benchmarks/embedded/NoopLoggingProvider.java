@@ -0,0 +1,61 @@
+package systems.opalia.service.neo4j.benchmarks.embedded;
+
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseLogger;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseLoggingProvider;
+
+
+public final class NoopLoggingProvider
+        implements EmbeddedDatabaseLoggingProvider {
+
+    private static final EmbeddedDatabaseLogger logger = new EmbeddedDatabaseLogger() {
+
+        public boolean isDebugEnabled() {
+
+            return false;
+        }
+
+        public boolean isInfoEnabled() {
+
+            return false;
+        }
+
+        public boolean isWarningEnabled() {
+
+            return false;
+        }
+
+        public boolean isErrorEnabled() {
+
+            return false;
+        }
+
+        public void debug(String message) {
+        }
+
+        public void debug(String message, Throwable throwable) {
+        }
+
+        public void info(String message) {
+        }
+
+        public void info(String message, Throwable throwable) {
+        }
+
+        public void warning(String message) {
+        }
+
+        public void warning(String message, Throwable throwable) {
+        }
+
+        public void error(String message) {
+        }
+
+        public void error(String message, Throwable throwable) {
+        }
+    };
+
+    public EmbeddedDatabaseLogger getLogger(String name) {
+
+        return logger;
+    }
+}
@@ -0,0 +1,101 @@
+package systems.opalia.service.neo4j.benchmarks.embedded;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseIntent;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryCursor;
+
+
+// Executes read statements on a populated temporary store. The scalar and node variants differ in the normalization
+// of the values; the node variant copies the properties of each node into a map.
+// Run with "benchmarks-embedded/jmh:run -prof gc QueryExecutionBenchmark" to see the allocations per statement.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class QueryExecutionBenchmark {
+
+    private static final String scalarClause =
+            "MATCH (n:Item) RETURN n.id AS id, n.score AS score, n.active AS active, n.name AS name";
+
+    private static final String nodeClause =
+            "MATCH (n:Item) RETURN n";
+
+    @Param({"1", "100", "10000"})
+    public int rowCount;
+
+    private TemporaryDatabase database;
+    private Map<String, Object> parameters;
+
+    @Setup
+    public void setup()
+            throws Throwable {
+
+        database = new TemporaryDatabase();
+        parameters = Collections.emptyMap();
+
+        database.getDatabase().withTransaction(service ->
+                service.executeUpdate(
+                        "UNWIND range(1, $count) AS i " +
+                                "CREATE (:Item {id: i, score: i * 0.5, active: i % 2 = 0, name: 'item-' + i})",
+                        Collections.singletonMap("count", rowCount)));
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException {
+
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Object executeScalars()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(
+                service -> service.execute(scalarClause, parameters), EmbeddedDatabaseIntent.READ_ONLY);
+    }
+
+    @Benchmark
+    public Object executeNodes()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(
+                service -> service.execute(nodeClause, parameters), EmbeddedDatabaseIntent.READ_ONLY);
+    }
+
+    @Benchmark
+    public Object executeColumnar()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(
+                service -> service.executeColumnar(scalarClause, parameters), EmbeddedDatabaseIntent.READ_ONLY);
+    }
+
+    @Benchmark
+    public Object stream()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(service -> {
+
+            long count = 0;
+
+            try (EmbeddedDatabaseQueryCursor cursor = service.stream(scalarClause, parameters)) {
+
+                while (cursor.hasNext()) {
+
+                    cursor.next();
+                    count++;
+                }
+            }
+
+            return count;
+
+        }, EmbeddedDatabaseIntent.READ_ONLY);
+    }
+}
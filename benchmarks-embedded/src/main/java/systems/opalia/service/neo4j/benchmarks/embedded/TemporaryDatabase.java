@@ -0,0 +1,89 @@
+package systems.opalia.service.neo4j.benchmarks.embedded;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabase;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseRetryPolicy;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseRetryReason;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseSettings;
+import systems.opalia.service.neo4j.embedded.impl.EmbeddedDatabaseFactoryImpl;
+
+
+// creates an embedded store in a temporary directory that is deleted on shutdown
+public final class TemporaryDatabase {
+
+    private final Path directory;
+    private final EmbeddedDatabase database;
+
+    public TemporaryDatabase()
+            throws IOException {
+
+        directory = Files.createTempDirectory("neo4j-benchmark-");
+
+        Path configFile = directory.resolve("database.conf");
+
+        Files.write(configFile, "dbms.backup.enabled=false\n".getBytes("UTF-8"));
+
+        database =
+                new EmbeddedDatabaseFactoryImpl()
+                        .newEmbeddedDatabase(
+                                new EmbeddedDatabaseSettings(
+                                        configFile,
+                                        directory.resolve("graph"),
+                                        new NoopLoggingProvider(),
+                                        new FixedRetryPolicy())
+                                        .setLogBufferSize(1024));
+
+        database.waitAvailable(Long.MAX_VALUE);
+    }
+
+    public EmbeddedDatabase getDatabase() {
+
+        return database;
+    }
+
+    public void shutdown()
+            throws IOException {
+
+        database.shutdown();
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+
+    private static final class FixedRetryPolicy
+            implements EmbeddedDatabaseRetryPolicy {
+
+        public void onFailure(EmbeddedDatabaseRetryReason reason) {
+        }
+
+        public boolean isRetryable(EmbeddedDatabaseRetryReason reason, Throwable throwable) {
+
+            return true;
+        }
+
+        public int getMaxRetries() {
+
+            return 4;
+        }
+
+        public long getMaxRetryTime() {
+
+            return Long.MAX_VALUE;
+        }
+
+        public long getBackoff(int retry, long previousBackoff) {
+
+            return 10;
+        }
+
+        public void onFinished(int retries, boolean committed) {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package systems.opalia.service.neo4j.benchmarks.embedded;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+// Opens and commits empty transactions to measure how transaction begin scales with the number of threads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TransactionBeginBenchmark {
+
+    private TemporaryDatabase database;
+
+    @Setup
+    public void setup()
+            throws IOException {
+
+        database = new TemporaryDatabase();
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException {
+
+        database.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object threads01()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(service -> Boolean.TRUE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object threads04()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(service -> Boolean.TRUE);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object threads16()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(service -> Boolean.TRUE);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object threads64()
+            throws Throwable {
+
+        return database.getDatabase().withTransaction(service -> Boolean.TRUE);
+    }
+}
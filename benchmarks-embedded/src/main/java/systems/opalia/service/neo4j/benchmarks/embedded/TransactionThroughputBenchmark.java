@@ -0,0 +1,124 @@
+package systems.opalia.service.neo4j.benchmarks.embedded;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseIntent;
+
+
+// Runs complete transactions with one statement each to measure how reads and writes scale with the number of threads.
+// The transactions are started on the embedded database, so the service layer above it is not part of the numbers.
+// Run with "benchmarks-embedded/jmh:run -prof gc TransactionThroughputBenchmark" for the allocations per transaction.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TransactionThroughputBenchmark {
+
+    private static final int itemCount = 10000;
+
+    private static final String readClause =
+            "MATCH (n:Item {id: $id}) RETURN n.name AS name";
+
+    private static final String writeClause =
+            "CREATE (:Event {id: $id})";
+
+    private TemporaryDatabase database;
+
+    @Setup
+    public void setup()
+            throws Throwable {
+
+        database = new TemporaryDatabase();
+
+        database.getDatabase().withTransaction(service ->
+                service.executeUpdate("CREATE INDEX ON :Item(id)", Collections.emptyMap()));
+
+        database.getDatabase().withTransaction(service ->
+                service.executeUpdate(
+                        "UNWIND range(1, $count) AS i CREATE (:Item {id: i, name: 'item-' + i})",
+                        Collections.singletonMap("count", itemCount)));
+
+        database.getDatabase().withTransaction(service ->
+                service.executeUpdate("CALL db.awaitIndexes()", Collections.emptyMap()));
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException {
+
+        database.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object read01()
+            throws Throwable {
+
+        return read();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object read04()
+            throws Throwable {
+
+        return read();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object read16()
+            throws Throwable {
+
+        return read();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object write01()
+            throws Throwable {
+
+        return write();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object write04()
+            throws Throwable {
+
+        return write();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object write16()
+            throws Throwable {
+
+        return write();
+    }
+
+    private Object read()
+            throws Throwable {
+
+        long id = ThreadLocalRandom.current().nextLong(1, itemCount + 1);
+
+        return database.getDatabase().withTransaction(
+                service -> service.execute(readClause, Collections.singletonMap("id", id)),
+                EmbeddedDatabaseIntent.READ_ONLY);
+    }
+
+    private Object write()
+            throws Throwable {
+
+        long id = ThreadLocalRandom.current().nextLong();
+
+        return database.getDatabase().withTransaction(
+                service -> service.executeUpdate(writeClause, Collections.singletonMap("id", id)),
+                EmbeddedDatabaseIntent.READ_WRITE);
+    }
+}
@@ -0,0 +1,32 @@
+package systems.opalia.service.neo4j.benchmarks
+
+import com.typesafe.config.ConfigFactory
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseService
+import systems.opalia.service.neo4j.impl.{BundleConfig, ConcreteExecutor, DatabaseMetrics, QueryCache}
+
+
+object BenchmarkConfig {
+
+  lazy val config: BundleConfig =
+    new BundleConfig(ConfigFactory.parseString(
+      """
+        |database {
+        |  deployment-path = "./tmp/benchmarks"
+        |  graph-path = "./tmp/benchmarks/graph"
+        |
+        |  tx-retries = 4
+        |  tx-backoff = "10 milliseconds"
+        |}
+      """.stripMargin))
+
+  def newMetrics(): DatabaseMetrics =
+    new DatabaseMetrics(config)
+
+  // the cache is disabled in this configuration, so every statement reaches the stub service
+  def newExecutor(service: EmbeddedDatabaseService): ConcreteExecutor = {
+
+    val metrics = newMetrics()
+
+    new ConcreteExecutor(service, metrics, new QueryCache(config, metrics))
+  }
+}
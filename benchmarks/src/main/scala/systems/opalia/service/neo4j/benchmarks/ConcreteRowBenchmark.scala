@@ -0,0 +1,52 @@
+package systems.opalia.service.neo4j.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+import scala.collection.immutable.ListMap
+import systems.opalia.commons.database.converter.DefaultConverter._
+import systems.opalia.commons.database.converter.NativeTypesConverter._
+import systems.opalia.interfaces.database._
+
+
+// Reads every column of a row once, as a mapper would do.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+class ConcreteRowBenchmark {
+
+  @Param(Array("5", "50", "500"))
+  var columnCount: Int = _
+
+  var columns: Array[String] = _
+  var row: Row = _
+  var legacyRow: ListMap[String, Any] = _
+
+  @Setup
+  def setup(): Unit = {
+
+    val table = StubDatabaseService.newTable(2, columnCount)
+    val executor = BenchmarkConfig.newExecutor(new StubDatabaseService(table))
+
+    columns = (0 until columnCount).map(i => s"c$i").toArray
+    row = executor.execute[IndexedSeqResult]("", Map.empty).transform(identity).last
+    legacyRow = ListMap(columns.zipWithIndex.map(x => (x._1, x._2.toLong: Any)): _*)
+  }
+
+  @Benchmark
+  def legacyLinearLookup(blackhole: Blackhole): Unit = {
+
+    for (column <- columns)
+      blackhole.consume(legacyRow.find(_._1 == column).map(_._2))
+  }
+
+  @Benchmark
+  def indexedLookup(blackhole: Blackhole): Unit = {
+
+    for (column <- columns)
+      blackhole.consume(row[Long](column))
+  }
+}
@@ -0,0 +1,59 @@
+package systems.opalia.service.neo4j.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import systems.opalia.interfaces.database._
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabasePreparedStatement
+import systems.opalia.service.neo4j.impl.{ConcreteExecutor, PreparedStatementImpl}
+
+
+// Compares the parameter handling of a raw clause with the one of a prepared statement.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+class PreparedStatementBenchmark {
+
+  @Param(Array("2", "10"))
+  var parameterCount: Int = _
+
+  var executor: ConcreteExecutor = _
+  var prepared: PreparedStatementImpl = _
+  var parameters: Map[String, Any] = _
+
+  @Setup
+  def setup(): Unit = {
+
+    val names = (0 until parameterCount).map(i => s"p$i")
+
+    executor = BenchmarkConfig.newExecutor(new StubDatabaseService(StubDatabaseService.newTable(1, 2)))
+    parameters = names.zipWithIndex.map(x => x._1 -> (if (x._2 % 2 == 0) x._2.toLong else s"value${x._2}")).toMap
+
+    prepared =
+      new PreparedStatementImpl(new EmbeddedDatabasePreparedStatement {
+
+        def getClause: String =
+          "match (n) return n"
+
+        def getParameterNames: java.util.List[String] =
+          java.util.Arrays.asList(names: _*)
+
+        def isReadOnly: Boolean =
+          true
+      })
+  }
+
+  @Benchmark
+  def rawClause(): Any = {
+
+    executor.execute[IgnoredResult]("match (n) return n", parameters)
+  }
+
+  @Benchmark
+  def preparedStatement(): Any = {
+
+    executor.execute[IgnoredResult](prepared, parameters)
+  }
+}
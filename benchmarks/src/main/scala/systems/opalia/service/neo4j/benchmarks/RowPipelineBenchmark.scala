@@ -0,0 +1,75 @@
+package systems.opalia.service.neo4j.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import scala.collection.JavaConverters._
+import scala.collection.immutable.ListMap
+import systems.opalia.commons.database.converter.DefaultConverter._
+import systems.opalia.commons.database.converter.NativeTypesConverter._
+import systems.opalia.interfaces.database._
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryTable
+import systems.opalia.service.neo4j.impl.ConcreteExecutor
+
+
+// Compares the former copying row pipeline with the shared column-indexed rows.
+// Run with "benchmarks/jmh:run -prof gc RowPipelineBenchmark" and compare gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+class RowPipelineBenchmark {
+
+  @Param(Array("1", "100", "10000"))
+  var rowCount: Int = _
+
+  @Param(Array("8"))
+  var columnCount: Int = _
+
+  var table: EmbeddedDatabaseQueryTable = _
+  var executor: ConcreteExecutor = _
+
+  @Setup
+  def setup(): Unit = {
+
+    table = StubDatabaseService.newTable(rowCount, columnCount)
+    executor = BenchmarkConfig.newExecutor(new StubDatabaseService(table))
+  }
+
+  @Benchmark
+  def legacyCopyingPipeline(): Long = {
+
+    // the former path: deep copy of each row, copy of the row list and a rebuild as ListMap
+    val rows =
+      new java.util.ArrayList(table.getRows).asScala.toVector
+        .map(x => LegacyRowPipeline.toScalaMap(LegacyRowPipeline.copy(x.getData)))
+
+    rows.map(row => row.find(_._1 == "c0").map(_._2).get.asInstanceOf[Long]).sum
+  }
+
+  @Benchmark
+  def columnIndexedPipeline(): Long = {
+
+    executor
+      .execute[IndexedSeqResult]("", Map.empty)
+      .transform(row => row[Long]("c0"))
+      .sum
+  }
+}
+
+object LegacyRowPipeline {
+
+  def copy(data: java.util.Map[String, AnyRef]): java.util.Map[String, AnyRef] = {
+
+    val result = new java.util.LinkedHashMap[String, AnyRef]
+
+    data.entrySet().asScala.foreach(x => result.put(x.getKey, x.getValue))
+
+    result
+  }
+
+  def toScalaMap(map: java.util.Map[_, _]): ListMap[String, Any] =
+    ListMap(map.entrySet().iterator().asScala.toSeq
+      .map(x => (x.getKey.toString, x.getValue)): _*)
+}
@@ -0,0 +1,66 @@
+package systems.opalia.service.neo4j.benchmarks
+
+import java.util.concurrent.TimeUnit
+import org.openjdk.jmh.annotations._
+import scala.collection.immutable.ListMap
+import systems.opalia.commons.database.converter.DefaultConverter._
+import systems.opalia.commons.database.converter.NativeTypesConverter._
+import systems.opalia.interfaces.database._
+import systems.opalia.interfaces.json.JsonAst
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabaseQueryStatistics, EmbeddedDatabaseQueryTable}
+import systems.opalia.service.neo4j.impl.ConcreteExecutor
+
+
+// Compares a point read that builds the statistics eagerly with one that never reads meta.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+class StatisticsBenchmark {
+
+  var table: EmbeddedDatabaseQueryTable = _
+  var executor: ConcreteExecutor = _
+
+  @Setup
+  def setup(): Unit = {
+
+    table = StubDatabaseService.newTable(1, 2)
+    executor = BenchmarkConfig.newExecutor(new StubDatabaseService(table))
+  }
+
+  @Benchmark
+  def eagerStatistics(): Any = {
+
+    val result = executor.execute[SingleResult]("", Map.empty)
+
+    (StatisticsBenchmark.toJson(table.getStatistics), result.transform(row => row[Long]("c1")))
+  }
+
+  @Benchmark
+  def lazyStatistics(): Any = {
+
+    executor.execute[SingleResult]("", Map.empty).transform(row => row[Long]("c1"))
+  }
+}
+
+object StatisticsBenchmark {
+
+  // the former construction that was performed for every statement
+  def toJson(statistics: EmbeddedDatabaseQueryStatistics): JsonAst.JsonObject =
+    JsonAst.JsonObject(ListMap(
+      "nodes_created" -> JsonAst.JsonNumberInt(statistics.getNodesCreated),
+      "nodes_deleted" -> JsonAst.JsonNumberInt(statistics.getNodesDeleted),
+      "relationships_created" -> JsonAst.JsonNumberInt(statistics.getRelationshipsCreated),
+      "relationships_deleted" -> JsonAst.JsonNumberInt(statistics.getRelationshipsDeleted),
+      "properties_set" -> JsonAst.JsonNumberInt(statistics.getPropertiesSet),
+      "labels_added" -> JsonAst.JsonNumberInt(statistics.getLabelsAdded),
+      "labels_removed" -> JsonAst.JsonNumberInt(statistics.getLabelsRemoved),
+      "indexes_added" -> JsonAst.JsonNumberInt(statistics.getIndexesAdded),
+      "indexes_removed" -> JsonAst.JsonNumberInt(statistics.getIndexesRemoved),
+      "constraints_added" -> JsonAst.JsonNumberInt(statistics.getConstraintsAdded),
+      "constraints_removed" -> JsonAst.JsonNumberInt(statistics.getConstraintsRemoved),
+      "contains_updates" -> JsonAst.JsonBoolean(statistics.containsUpdates)
+    ))
+}
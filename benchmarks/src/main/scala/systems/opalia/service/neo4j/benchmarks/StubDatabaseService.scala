@@ -0,0 +1,218 @@
+package systems.opalia.service.neo4j.benchmarks
+
+import scala.collection.JavaConverters._
+import systems.opalia.service.neo4j.embedded.api._
+
+
+// serves a prepared table to isolate the conversion costs of the database service from Neo4j
+final class StubDatabaseService(table: EmbeddedDatabaseQueryTable)
+  extends EmbeddedDatabaseService {
+
+  def execute(clause: String, parameters: java.util.Map[String, AnyRef]): EmbeddedDatabaseQueryTable =
+    table
+
+  def prepare(clause: String): EmbeddedDatabasePreparedStatement =
+    new EmbeddedDatabasePreparedStatement {
+
+      def getClause: String =
+        clause
+
+      def getParameterNames: java.util.List[String] =
+        java.util.Collections.emptyList[String]
+
+      def isReadOnly: Boolean =
+        table.isReadOnly
+    }
+
+  def executeColumnar(clause: String, parameters: java.util.Map[String, AnyRef]): EmbeddedDatabaseQueryColumnTable =
+    new StubDatabaseService.StubColumnTable(table)
+
+  def stream(clause: String, parameters: java.util.Map[String, AnyRef]): EmbeddedDatabaseQueryCursor =
+    new EmbeddedDatabaseQueryCursor {
+
+      private val rows = table.getRows.iterator()
+
+      def getStatistics: EmbeddedDatabaseQueryStatistics =
+        table.getStatistics
+
+      def getHeader: EmbeddedDatabaseQueryHeader =
+        table.getHeader
+
+      def getColumns: java.util.List[String] =
+        table.getColumns
+
+      def hasNext: Boolean =
+        rows.hasNext
+
+      def next(): EmbeddedDatabaseQueryRow =
+        rows.next()
+
+      def close(): Unit = {
+      }
+    }
+
+  def executeUpdate(clause: String, parameters: java.util.Map[String, AnyRef]): EmbeddedDatabaseQueryStatistics =
+    table.getStatistics
+
+  def withStatementTimeout(timeout: Long): EmbeddedDatabaseService =
+    this
+}
+
+object StubDatabaseService {
+
+  def newTable(rowCount: Int, columnCount: Int): EmbeddedDatabaseQueryTable = {
+
+    val header = new StubHeader((0 until columnCount).map(i => s"c$i").toArray)
+    val rows = (0 until rowCount).map(i => new StubRow(header, Array.tabulate[AnyRef](columnCount)(j => Long.box(i.toLong * j))))
+
+    new StubTable(header, rows.toList.asJava)
+  }
+
+  final class StubHeader(columns: Array[String])
+    extends EmbeddedDatabaseQueryHeader {
+
+    private val columnList = java.util.Collections.unmodifiableList(java.util.Arrays.asList(columns: _*))
+
+    def size: Int =
+      columns.length
+
+    def getColumn(index: Int): String =
+      columns(index)
+
+    def getColumns: java.util.List[String] =
+      columnList
+  }
+
+  final class StubRow(header: EmbeddedDatabaseQueryHeader, values: Array[AnyRef])
+    extends EmbeddedDatabaseQueryRow {
+
+    def getHeader: EmbeddedDatabaseQueryHeader =
+      header
+
+    def getValue(index: Int): AnyRef =
+      values(index)
+
+    def getData: java.util.Map[String, AnyRef] = {
+
+      val map = new java.util.LinkedHashMap[String, AnyRef]
+
+      for (i <- values.indices)
+        map.put(header.getColumn(i), values(i))
+
+      java.util.Collections.unmodifiableMap(map)
+    }
+  }
+
+  final class StubTable(header: EmbeddedDatabaseQueryHeader, rows: java.util.List[EmbeddedDatabaseQueryRow])
+    extends EmbeddedDatabaseQueryTable {
+
+    def getStatistics: EmbeddedDatabaseQueryStatistics =
+      StubStatistics
+
+    def getHeader: EmbeddedDatabaseQueryHeader =
+      header
+
+    def getColumns: java.util.List[String] =
+      header.getColumns
+
+    def getRows: java.util.List[EmbeddedDatabaseQueryRow] =
+      rows
+
+    def isReadOnly: Boolean =
+      true
+
+    def isSpilled: Boolean =
+      false
+
+    def close(): Unit = {
+    }
+  }
+
+  // copies the values of the prepared table into long vectors; the stub table only contains longs
+  final class StubColumnTable(table: EmbeddedDatabaseQueryTable)
+    extends EmbeddedDatabaseQueryColumnTable {
+
+    private val columns =
+      (0 until table.getHeader.size).map {
+        j =>
+
+          val values = table.getRows.asScala.map(_.getValue(j).asInstanceOf[Long]).toArray
+
+          new StubColumn(table.getHeader.getColumn(j), values)
+      }
+
+    def getStatistics: EmbeddedDatabaseQueryStatistics =
+      table.getStatistics
+
+    def getHeader: EmbeddedDatabaseQueryHeader =
+      table.getHeader
+
+    def getColumns: java.util.List[String] =
+      table.getColumns
+
+    def size: Int =
+      table.getRows.size
+
+    def getColumn(index: Int): EmbeddedDatabaseQueryColumn =
+      columns(index)
+
+    def getRows: java.util.List[EmbeddedDatabaseQueryRow] =
+      table.getRows
+  }
+
+  final class StubColumn(name: String, values: Array[Long])
+    extends EmbeddedDatabaseQueryColumn {
+
+    def getName: String =
+      name
+
+    def getType: EmbeddedDatabaseColumnType =
+      EmbeddedDatabaseColumnType.LONG
+
+    def size: Int =
+      values.length
+
+    def isNull(row: Int): Boolean =
+      false
+
+    def getLong(row: Int): Long =
+      values(row)
+
+    def getDouble(row: Int): Double =
+      values(row)
+
+    def getBoolean(row: Int): Boolean =
+      throw new IllegalStateException(s"Expect column $name of type BOOLEAN but it is LONG.")
+
+    def getObject(row: Int): AnyRef =
+      Long.box(values(row))
+  }
+
+  object StubStatistics
+    extends EmbeddedDatabaseQueryStatistics {
+
+    def getNodesCreated: Int = 0
+
+    def getNodesDeleted: Int = 0
+
+    def getRelationshipsCreated: Int = 0
+
+    def getRelationshipsDeleted: Int = 0
+
+    def getPropertiesSet: Int = 0
+
+    def getLabelsAdded: Int = 0
+
+    def getLabelsRemoved: Int = 0
+
+    def getIndexesAdded: Int = 0
+
+    def getIndexesRemoved: Int = 0
+
+    def getConstraintsAdded: Int = 0
+
+    def getConstraintsRemoved: Int = 0
+
+    def containsUpdates: Boolean = false
+  }
+}
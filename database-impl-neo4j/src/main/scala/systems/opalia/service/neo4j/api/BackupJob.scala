@@ -0,0 +1,20 @@
+package systems.opalia.service.neo4j.api
+
+import java.time.Instant
+import scala.concurrent.Future
+
+
+trait BackupJob {
+
+  def submitted: Instant
+
+  // the fraction of the store archived so far, from 0 to 1
+  def progress: Double
+
+  def isDone: Boolean
+
+  // stops the job after the current step; returns false if the job has already finished
+  def cancel(): Boolean
+
+  def future: Future[Unit]
+}
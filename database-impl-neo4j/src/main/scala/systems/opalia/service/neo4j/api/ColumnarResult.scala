@@ -0,0 +1,40 @@
+package systems.opalia.service.neo4j.api
+
+import systems.opalia.interfaces.database.Row
+import systems.opalia.interfaces.json.JsonAst
+
+
+// a result held as one vector per column; numeric and boolean columns are read without boxing
+trait ColumnarResult {
+
+  def columns: IndexedSeq[String]
+
+  def meta: JsonAst.JsonObject
+
+  def size: Int
+
+  def column(name: String): ColumnarResult.Column
+
+  // the rows are built from the columns on first access
+  def rows: IndexedSeq[Row]
+}
+
+object ColumnarResult {
+
+  trait Column {
+
+    def name: String
+
+    def size: Int
+
+    def isNull(row: Int): Boolean
+
+    def long(row: Int): Long
+
+    def double(row: Int): Double
+
+    def boolean(row: Int): Boolean
+
+    def value(row: Int): Any
+  }
+}
@@ -0,0 +1,8 @@
+package systems.opalia.service.neo4j.api
+
+
+trait DatabaseBackupService {
+
+  // starts a backup in the background; a request arriving while a backup is running gets the job of that backup
+  def submitBackup(): BackupJob
+}
@@ -0,0 +1,12 @@
+package systems.opalia.service.neo4j.api
+
+import systems.opalia.interfaces.json.JsonAst
+
+
+trait DatabaseMetricsService {
+
+  // returns the counters and latency histograms recorded since the start or the last reset
+  def metrics: JsonAst.JsonObject
+
+  def resetMetrics(): Unit
+}
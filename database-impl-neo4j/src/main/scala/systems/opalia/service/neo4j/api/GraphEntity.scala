@@ -0,0 +1,18 @@
+package systems.opalia.service.neo4j.api
+
+
+// a node or relationship of a result; the map holds its properties
+trait GraphEntity
+  extends Map[String, Any] {
+
+  def id: Long
+
+  def isNode: Boolean
+
+  def labels: IndexedSeq[String]
+
+  def relationshipType: Option[String]
+
+  // copies the given properties, so that the entity stays readable after the transaction is closed
+  def project(keys: String*): GraphEntity
+}
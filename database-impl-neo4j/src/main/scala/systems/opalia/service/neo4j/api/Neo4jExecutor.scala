@@ -0,0 +1,44 @@
+package systems.opalia.service.neo4j.api
+
+import scala.concurrent.duration.FiniteDuration
+import scala.reflect.ClassTag
+import systems.opalia.interfaces.database.{Executor, Result}
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics
+
+
+trait Neo4jExecutor
+  extends Executor {
+
+  def stream(clause: String, parameters: Map[String, Any]): StreamingResult
+
+  // keeps the rows as typed column vectors; it never uses the query cache
+  def executeColumnar(clause: String, parameters: Map[String, Any]): ColumnarResult
+
+  // the statements executed in the block terminate the whole transaction if one of them exceeds the timeout
+  def withStatementTimeout[T](timeout: FiniteDuration)(block: => T): T
+
+  // plans the clause once; the returned handle skips the validation of parameter keys on each execution
+  def prepare(clause: String): PreparedStatement
+
+  def execute[R <: Result : ClassTag](statement: PreparedStatement, parameters: Map[String, Any]): R
+
+  def stream(statement: PreparedStatement, parameters: Map[String, Any]): StreamingResult
+
+  // runs the clause once per group of records as "UNWIND $batch AS row <clause>"; each record is bound to "row"
+  def executeBatch(clause: String,
+                   records: Iterator[Map[String, Any]],
+                   batchSize: Int): EmbeddedDatabaseQueryStatistics
+}
+
+object Neo4jExecutor {
+
+  def apply(executor: Executor): Neo4jExecutor =
+    executor match {
+
+      case x: Neo4jExecutor => x
+
+      case _ =>
+        throw new IllegalArgumentException(
+          s"Expect executor with type ${classOf[Neo4jExecutor].getName}.")
+    }
+}
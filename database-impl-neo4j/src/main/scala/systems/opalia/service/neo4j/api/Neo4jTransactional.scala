@@ -0,0 +1,44 @@
+package systems.opalia.service.neo4j.api
+
+import scala.concurrent.Future
+import scala.concurrent.duration.FiniteDuration
+import systems.opalia.interfaces.database.{Executor, Transactional}
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics
+
+
+trait Neo4jTransactional
+  extends Transactional {
+
+  // runs the transaction on the bounded transaction executor of the service without blocking the caller
+  def withTransactionAsync[T](block: Executor => T): Future[T]
+
+  // a read-only transaction runs in read access mode and fails on any write
+  def withReadOnlyTransaction[T](block: Executor => T): T
+
+  def withReadOnlyTransactionAsync[T](block: Executor => T): Future[T]
+
+  // returns a transactional whose transactions are terminated by the database once they run longer than the timeout
+  def withTimeout(timeout: FiniteDuration): Neo4jTransactional
+
+  // prepares a statement in a transaction of its own, for example to warm up the plan cache at startup
+  def prepare(clause: String): PreparedStatement
+
+  // like executeBatch but commits a new transaction after each number of batches
+  def withBatches(clause: String,
+                  records: Iterator[Map[String, Any]],
+                  batchSize: Int,
+                  batchesPerTransaction: Int): EmbeddedDatabaseQueryStatistics
+}
+
+object Neo4jTransactional {
+
+  def apply(transactional: Transactional): Neo4jTransactional =
+    transactional match {
+
+      case x: Neo4jTransactional => x
+
+      case _ =>
+        throw new IllegalArgumentException(
+          s"Expect transactional with type ${classOf[Neo4jTransactional].getName}.")
+    }
+}
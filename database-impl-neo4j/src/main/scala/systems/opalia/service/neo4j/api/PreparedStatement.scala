@@ -0,0 +1,12 @@
+package systems.opalia.service.neo4j.api
+
+
+// a planned clause whose parameter names are known; a handle can be reused in any later transaction
+trait PreparedStatement {
+
+  def clause: String
+
+  def parameterNames: IndexedSeq[String]
+
+  def readOnly: Boolean
+}
@@ -0,0 +1,19 @@
+package systems.opalia.service.neo4j.api
+
+import systems.opalia.interfaces.database.Row
+import systems.opalia.interfaces.json.JsonAst
+
+
+trait StreamingResult
+  extends AutoCloseable {
+
+  def columns: IndexedSeq[String]
+
+  // the statistics are only complete after all rows have been consumed
+  def meta: JsonAst.JsonObject
+
+  // the rows are fetched lazily from the database and can only be traversed once
+  def transform[T](f: Row => T): Iterator[T]
+
+  def close(): Unit
+}
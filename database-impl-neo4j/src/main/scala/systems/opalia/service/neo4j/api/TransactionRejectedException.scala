@@ -0,0 +1,6 @@
+package systems.opalia.service.neo4j.api
+
+
+// thrown before a transaction begins if the admission queue is full or the wait for a free slot timed out
+final class TransactionRejectedException(message: String, val queueFull: Boolean)
+  extends RuntimeException(message)
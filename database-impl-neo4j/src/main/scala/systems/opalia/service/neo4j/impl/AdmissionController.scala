@@ -0,0 +1,122 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent.{Semaphore, TimeUnit}
+import systems.opalia.service.neo4j.api.TransactionRejectedException
+
+
+// limits the number of transactions running at once; further callers wait in a fair queue of bounded length
+final class AdmissionController(config: BundleConfig, metrics: DatabaseMetrics) {
+
+  private val permits = new AdmissionController.ResizableSemaphore(config.Admission.maxConcurrent)
+
+  private var limit = config.Admission.maxConcurrent
+  private var successes = 0
+  private var lastDecrease = 0L
+
+  metrics.admissionLimit.set(limit)
+
+  // returns the time of admission, which has to be passed to the release of the slot
+  def acquire(): Long = {
+
+    val start = System.nanoTime()
+
+    if (!config.Admission.enabled)
+      start
+    else {
+
+      // a fair semaphore only respects the queue with a timed try
+      if (!permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+
+        if (metrics.admissionQueue.incrementAndGet() > config.Admission.queueSize) {
+
+          metrics.admissionQueue.decrementAndGet()
+          metrics.recordRejection()
+
+          throw new TransactionRejectedException(
+            s"Cannot begin a transaction because ${config.Admission.queueSize} transactions are already waiting.",
+            queueFull = true)
+        }
+
+        val admitted =
+          try {
+
+            permits.tryAcquire(config.Admission.queueTimeout.toNanos, TimeUnit.NANOSECONDS)
+
+          } finally {
+
+            metrics.admissionQueue.decrementAndGet()
+          }
+
+        if (!admitted) {
+
+          metrics.recordRejection()
+
+          throw new TransactionRejectedException(
+            s"Cannot begin a transaction within ${config.Admission.queueTimeout}.",
+            queueFull = false)
+        }
+      }
+
+      val now = System.nanoTime()
+
+      metrics.recordAdmission(now - start)
+
+      now
+    }
+  }
+
+  def release(admitted: Long): Unit =
+    if (config.Admission.enabled) {
+
+      if (config.Admission.adaptive)
+        adapt(System.nanoTime() - admitted)
+
+      permits.release()
+    }
+
+  // AIMD: the limit grows by one after a full limit of fast transactions and shrinks by a tenth on a slow one
+  private def adapt(latency: Long): Unit =
+    synchronized {
+
+      val now = System.nanoTime()
+
+      if (latency > config.Admission.targetLatency.toNanos) {
+
+        successes = 0
+
+        // the transactions of a single burst are slow together, so the limit shrinks at most once per target latency
+        if (now - lastDecrease > config.Admission.targetLatency.toNanos && limit > config.Admission.minConcurrent) {
+
+          val decreased = math.max(config.Admission.minConcurrent, (limit * 0.9).toInt)
+
+          permits.reduce(limit - decreased)
+          limit = decreased
+          lastDecrease = now
+          metrics.admissionLimit.set(limit)
+        }
+
+      } else {
+
+        successes += 1
+
+        if (successes >= limit && limit < config.Admission.maxConcurrent) {
+
+          successes = 0
+          limit += 1
+          permits.release()
+          metrics.admissionLimit.set(limit)
+        }
+      }
+    }
+}
+
+object AdmissionController {
+
+  private final class ResizableSemaphore(permits: Int)
+    extends Semaphore(permits, true) {
+
+    def reduce(reduction: Int): Unit =
+      reducePermits(reduction)
+  }
+
+}
@@ -0,0 +1,451 @@
+package systems.opalia.service.neo4j.impl
+
+import java.io.{ByteArrayOutputStream, FilterOutputStream, InputStream, OutputStream}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path, StandardCopyOption, StandardOpenOption}
+import java.security.MessageDigest
+import java.time.Instant
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.{Deflater, DeflaterOutputStream, InflaterInputStream}
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+import systems.opalia.commons.identifier.ObjectId
+import systems.opalia.commons.io.FileUtils
+import systems.opalia.interfaces.logging.Logger
+
+
+// Stores the backup directory as content-addressed chunks; only chunks that are not yet in the file system are
+// uploaded, and a manifest per archive lists the chunks needed to restore each file. The local index only remembers
+// which chunks were uploaded before; each of them is checked against the file system once per archive before a
+// manifest refers to it, so that chunks removed from the file system are uploaded again.
+final class BackupArchiver(config: BundleConfig,
+                           fs: BackupArchiver.Store,
+                           metrics: DatabaseMetrics,
+                           loggerStats: Logger) {
+
+  private val throttle = new BackupThrottle(config, metrics)
+  private val progress = metrics.backupProgress
+
+  private val chunkIndexPath = config.deploymentPath.resolve("backup-chunks.idx")
+  private val fileIndexPath = config.deploymentPath.resolve("backup-files.idx")
+
+  // the chunks uploaded by earlier archives
+  private val chunks = ConcurrentHashMap.newKeySet[String]()
+
+  chunks.addAll(readLines(chunkIndexPath).asJava)
+
+  private val files =
+    mutable.Map[String, BackupArchiver.FileEntry]() ++=
+      readLines(fileIndexPath).map(BackupArchiver.FileEntry.parse).map(x => x.path -> x)
+
+  private val threadCounter = new AtomicLong()
+
+  // each thread reads its chunks into the same buffer, so reading does not allocate or map per chunk
+  private val buffers = ThreadLocal.withInitial[Array[Byte]](() => new Array[Byte](config.Backup.chunkSize))
+
+  // the chunks are hashed and compressed in parallel; each task streams its output directly into the file system
+  private val executor =
+    Executors.newFixedThreadPool(
+      config.Backup.compressionThreads,
+      (runnable: Runnable) => {
+
+        val thread = new Thread(runnable, s"neo4j-backup-archiver-${threadCounter.incrementAndGet()}")
+
+        thread.setDaemon(true)
+        thread
+      })
+
+  def shutdown(): Unit = {
+
+    executor.shutdownNow()
+    executor.awaitTermination(Long.MaxValue, TimeUnit.MILLISECONDS)
+  }
+
+  def archive(directory: Path): Unit = {
+
+    val start = System.nanoTime()
+    val created = Instant.now
+    // the chunks of this archive that are known to be in the file system or are being uploaded
+    val present = ConcurrentHashMap.newKeySet[String]()
+
+    // only a few chunks per thread are in flight, so a large store does not queue all of its chunks at once
+    val window = new Semaphore(config.Backup.compressionThreads * 2)
+
+    progress.begin(throttle)
+
+    val (manifestHash, fileCount) =
+      try {
+
+        val result = archiveFiles(directory, created, present, window)
+
+        progress.finish(succeeded = true)
+        result
+
+      } catch {
+
+        case e: Throwable =>
+
+          progress.finish(succeeded = false)
+          throw e
+      }
+
+    val seconds = math.max(System.nanoTime() - start, 1L).toDouble / 1000000000
+    val throughput = progress.read.toDouble / 1024 / 1024 / seconds
+
+    loggerStats.info(
+      s"A backup archive with manifest $manifestHash was written " +
+        s"(${progress.read} bytes read, ${progress.written} bytes uploaded, $fileCount files, " +
+        f"$throughput%.1f MB/s).")
+  }
+
+  private def archiveFiles(directory: Path,
+                           created: Instant,
+                           present: java.util.Set[String],
+                           window: Semaphore): (String, Int) = {
+
+    val paths =
+      FileUtils.using(Files.walk(directory)) {
+        stream =>
+
+          stream.iterator.asScala.filter(x => Files.isRegularFile(x)).toVector.sortBy(_.toString)
+      }
+
+    // the chunks are submitted as the window allows; the results are collected in file order
+    val pending = mutable.ArrayBuffer[Either[BackupArchiver.FileEntry, (String, Long, Long, Seq[Future[String]])]]()
+
+    def cancel(): Unit =
+      pending.collect { case Right((_, _, _, tasks)) => tasks }.flatten.foreach(_.cancel(true))
+
+    try {
+
+      paths.foreach {
+        path =>
+
+          val name = directory.relativize(path).toString
+          val size = Files.size(path)
+          val modified = Files.getLastModifiedTime(path).toMillis
+
+          files.get(name) match {
+
+            // unchanged files are not read again
+            case Some(entry) if entry.size == size && entry.modified == modified &&
+              entry.chunks.forall(x => isPresent(x, present)) =>
+              pending += Left(entry)
+
+            case _ =>
+
+              progress.addTotal(size)
+
+              val tasks = mutable.ArrayBuffer[Future[String]]()
+
+              pending += Right((name, size, modified, tasks))
+
+              (0L until size by config.Backup.chunkSize.toLong).foreach {
+                offset =>
+
+                  val length = math.min(config.Backup.chunkSize.toLong, size - offset).toInt
+
+                  window.acquire()
+
+                  try {
+
+                    tasks += executor.submit(new Callable[String] {
+
+                      def call(): String =
+                        try {
+
+                          archiveChunk(path, offset, length, present)
+
+                        } finally {
+
+                          window.release()
+                        }
+                    })
+
+                  } catch {
+
+                    case e: Throwable =>
+
+                      window.release()
+                      throw e
+                  }
+              }
+          }
+      }
+
+    } catch {
+
+      case e: Throwable =>
+
+        cancel()
+        throw e
+    }
+
+    val entries =
+      try {
+
+        pending.map {
+
+          case Left(entry) =>
+            entry
+
+          case Right((name, size, modified, tasks)) =>
+            BackupArchiver.FileEntry(name, size, modified, tasks.map(_.get).toVector)
+        }
+
+      } catch {
+
+        case e: Throwable =>
+
+          // the remaining chunks are dropped if a chunk failed or the archive was cancelled
+          cancel()
+
+          e match {
+
+            case e: ExecutionException => throw e.getCause
+            case _ => throw e
+          }
+      }
+
+    val manifest = BackupArchiver.manifest(created, entries)
+    val manifestHash = BackupArchiver.hash(ByteBuffer.wrap(manifest))
+
+    upload(BackupArchiver.id(manifestHash), s"backup-${created.toEpochMilli}.manifest", "text/plain") {
+      outputStream =>
+
+        outputStream.write(manifest)
+    }
+
+    files.clear()
+    files ++= entries.map(x => x.path -> x)
+
+    writeLines(chunkIndexPath, chunks.asScala.toVector.sorted)
+    writeLines(fileIndexPath, entries.map(_.format))
+
+    (manifestHash, entries.size)
+  }
+
+  private def archiveChunk(path: Path,
+                           offset: Long,
+                           length: Int,
+                           present: java.util.Set[String]): String = {
+
+    val input = buffers.get
+
+    FileUtils.using(FileChannel.open(path, StandardOpenOption.READ)) {
+      channel =>
+
+        throttle.read(length)
+
+        val target = ByteBuffer.wrap(input, 0, length)
+
+        while (target.hasRemaining)
+          if (channel.read(target, offset + target.position) < 0)
+            throw new IllegalStateException(s"The file $path was truncated during the backup.")
+    }
+
+    val hash = BackupArchiver.hash(ByteBuffer.wrap(input, 0, length))
+
+    progress.addRead(length)
+
+    // the same content can appear in several places, but it is only checked and uploaded once
+    if (present.add(hash) && !isStored(hash)) {
+
+      upload(BackupArchiver.id(hash), s"$hash.chunk", "application/octet-stream") {
+        outputStream =>
+
+          val counting = new ThrottledOutputStream(outputStream)
+          val deflater = new Deflater(config.Backup.compressionLevel)
+
+          try {
+
+            FileUtils.using(new DeflaterOutputStream(counting, deflater, 64 * 1024)) {
+              deflaterStream =>
+
+                // the stream is written in slices, so that the throttle can pace the upload
+                var position = 0
+
+                while (position < length) {
+
+                  val count = math.min(length - position, 64 * 1024)
+
+                  deflaterStream.write(input, position, count)
+                  position += count
+                }
+            }
+
+          } finally {
+
+            deflater.end()
+          }
+      }
+
+      chunks.add(hash)
+    }
+
+    hash
+  }
+
+  private def isPresent(hash: String, present: java.util.Set[String]): Boolean =
+    present.contains(hash) || (isStored(hash) && {
+
+      present.add(hash)
+      true
+    })
+
+  // a chunk of the index that is missing in the file system is removed from the index
+  private def isStored(hash: String): Boolean =
+    chunks.contains(hash) && (fs.exists(BackupArchiver.id(hash)) || {
+
+      chunks.remove(hash)
+      false
+    })
+
+  private def upload(id: Array[Byte], name: String, mimeType: String)(block: OutputStream => Unit): Unit = {
+
+    FileUtils.using(fs.create(id, name, mimeType))(block)
+
+    fs.commit(id)
+  }
+
+  private def readLines(path: Path): Vector[String] =
+    if (Files.exists(path))
+      Files.readAllLines(path, StandardCharsets.UTF_8).asScala.toVector.filter(_.nonEmpty)
+    else
+      Vector.empty
+
+  private def writeLines(path: Path, lines: Seq[String]): Unit = {
+
+    val temporary = path.resolveSibling(s"${path.getFileName}.tmp")
+
+    Files.write(temporary, lines.asJava, StandardCharsets.UTF_8)
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+  }
+
+  private final class ThrottledOutputStream(outputStream: OutputStream)
+    extends FilterOutputStream(outputStream) {
+
+    override def write(b: Int): Unit = {
+
+      throttle.write(1)
+      outputStream.write(b)
+      progress.addWritten(1)
+    }
+
+    override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+
+      throttle.write(len)
+      outputStream.write(b, off, len)
+      progress.addWritten(len)
+    }
+
+    // the underlying stream is closed by the file system handling
+    override def close(): Unit =
+      flush()
+  }
+
+}
+
+object BackupArchiver {
+
+  private val manifestHeader = "opalia-neo4j-backup 1"
+
+  // the operations of the VFS file system used by the archiver
+  trait Store {
+
+    def exists(id: Array[Byte]): Boolean
+
+    def create(id: Array[Byte], name: String, mimeType: String): OutputStream
+
+    def commit(id: Array[Byte]): Unit
+  }
+
+  case class FileEntry(path: String, size: Long, modified: Long, chunks: Vector[String]) {
+
+    def format: String =
+      s"$path\t$size\t$modified\t${chunks.mkString(",")}"
+  }
+
+  object FileEntry {
+
+    def parse(line: String): FileEntry = {
+
+      val parts = line.split('\t')
+
+      FileEntry(parts(0), parts(1).toLong, parts(2).toLong,
+        if (parts.length > 3) parts(3).split(',').toVector.filter(_.nonEmpty) else Vector.empty)
+    }
+  }
+
+  def hash(buffer: ByteBuffer): String = {
+
+    val digest = MessageDigest.getInstance("SHA-256")
+
+    digest.update(buffer)
+    digest.digest().map(x => f"${x & 0xff}%02x").mkString
+  }
+
+  // the identifier of an object in the file system is derived from its content
+  def id(hash: String): Array[Byte] =
+    java.util.Arrays.copyOf(hash.grouped(2).map(x => Integer.parseInt(x, 16).toByte).toArray, ObjectId.length)
+
+  def manifest(created: Instant, entries: Seq[FileEntry]): Array[Byte] =
+    (Seq(manifestHeader, s"created\t$created") ++ entries.map(x => s"file\t${x.format}"))
+      .mkString("", "\n", "\n")
+      .getBytes(StandardCharsets.UTF_8)
+
+  // restores the files listed in a manifest; the compressed chunks are fetched by their identifiers and verified
+  // (the service does not expose it; it is the reference for restoring archives with external tooling)
+  def restore(manifest: InputStream, fetch: Array[Byte] => InputStream, target: Path): Unit = {
+
+    val lines =
+      new String(FileUtils.using(manifest)(readFully), StandardCharsets.UTF_8).split('\n').toVector
+
+    if (!lines.headOption.contains(manifestHeader))
+      throw new IllegalArgumentException("Expect a backup manifest.")
+
+    lines.filter(_.startsWith("file\t")).map(x => FileEntry.parse(x.stripPrefix("file\t"))).foreach {
+      entry =>
+
+        val path = target.resolve(entry.path).normalize
+
+        if (!path.startsWith(target.normalize))
+          throw new IllegalArgumentException(s"Cannot restore file outside of target directory: ${entry.path}")
+
+        Files.createDirectories(path.getParent)
+
+        FileUtils.using(Files.newOutputStream(path)) {
+          outputStream =>
+
+            entry.chunks.foreach {
+              chunk =>
+
+                val bytes = FileUtils.using(new InflaterInputStream(fetch(id(chunk))))(readFully)
+
+                if (hash(ByteBuffer.wrap(bytes)) != chunk)
+                  throw new IllegalStateException(s"Chunk $chunk of file ${entry.path} is corrupted.")
+
+                outputStream.write(bytes)
+            }
+        }
+    }
+  }
+
+  private def readFully(inputStream: InputStream): Array[Byte] = {
+
+    val outputStream = new ByteArrayOutputStream()
+    val buffer = new Array[Byte](8192)
+    var length = inputStream.read(buffer)
+
+    while (length >= 0) {
+
+      outputStream.write(buffer, 0, length)
+      length = inputStream.read(buffer)
+    }
+
+    outputStream.toByteArray
+  }
+}
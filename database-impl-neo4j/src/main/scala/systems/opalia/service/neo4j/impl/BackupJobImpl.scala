@@ -0,0 +1,97 @@
+package systems.opalia.service.neo4j.impl
+
+import java.time.Instant
+import java.util.concurrent.CancellationException
+import scala.concurrent.{Future, Promise}
+import systems.opalia.service.neo4j.api.BackupJob
+
+
+final class BackupJobImpl(progressOf: () => Double)
+  extends BackupJob {
+
+  private val promise = Promise[Unit]()
+
+  @volatile private var cancelled = false
+  @volatile private var archiving = false
+  @volatile private var thread = Option.empty[Thread]
+
+  val submitted: Instant = Instant.now
+
+  def progress: Double =
+    if (promise.isCompleted)
+      1d
+    else if (archiving)
+      progressOf()
+    else
+      0d
+
+  def isDone: Boolean =
+    promise.isCompleted
+
+  def isCancelled: Boolean =
+    cancelled
+
+  def future: Future[Unit] =
+    promise.future
+
+  def cancel(): Boolean =
+    synchronized {
+
+      if (promise.isCompleted)
+        false
+      else {
+
+        cancelled = true
+        thread.foreach(_.interrupt())
+        true
+      }
+    }
+
+  // runs the online backup and the archive step on the calling thread, checking for cancellation in between
+  def run(backup: () => Unit, archive: () => Unit): Unit = {
+
+    synchronized {
+
+      thread = Some(Thread.currentThread)
+    }
+
+    try {
+
+      checkCancelled()
+      backup()
+
+      checkCancelled()
+      archiving = true
+      archive()
+
+      promise.trySuccess(())
+
+    } catch {
+
+      // the interrupt surfaces as whatever the step was blocked in, e.g. a closed channel or a failed chunk task
+      case _: Throwable if cancelled =>
+        abandon()
+
+      case e: Throwable =>
+        promise.tryFailure(e)
+
+    } finally {
+
+      synchronized {
+
+        thread = None
+      }
+
+      // the interrupt of a late cancellation must not leak into the next task of the thread
+      Thread.interrupted()
+    }
+  }
+
+  // completes a job that will not run anymore
+  def abandon(): Unit =
+    promise.tryFailure(new CancellationException("The backup was cancelled."))
+
+  private def checkCancelled(): Unit =
+    if (cancelled)
+      throw new InterruptedException()
+}
@@ -1,13 +1,14 @@
 package systems.opalia.service.neo4j.impl
 
-import java.time.Instant
-import java.util.concurrent.{Executors, TimeUnit}
+import java.io.OutputStream
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{Executors, ThreadFactory, TimeUnit}
+import scala.concurrent.Await
 import scala.concurrent.duration._
 import scala.language.postfixOps
-import systems.opalia.commons.identifier.ObjectId
-import systems.opalia.commons.io.FileUtils
 import systems.opalia.interfaces.logging.Logger
 import systems.opalia.interfaces.vfs.VfsService
+import systems.opalia.service.neo4j.api.BackupJob
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseFactory
 
 
@@ -15,7 +16,8 @@ final class BackupManager(config: BundleConfig,
                           factory: EmbeddedDatabaseFactory,
                           logger: Logger,
                           loggerStats: Logger,
-                          vfsService: VfsService) {
+                          vfsService: VfsService,
+                          metrics: DatabaseMetrics) {
 
   private val intervalMinimum = 1 minute
 
@@ -28,10 +30,42 @@ final class BackupManager(config: BundleConfig,
     else
       None
 
-  private val fs = vfsService.getFileSystem("backup")
+  private lazy val archiver = {
 
+    val fs = vfsService.getFileSystem("backup")
+
+    val store =
+      new BackupArchiver.Store {
+
+        def exists(id: Array[Byte]): Boolean =
+          fs.exists(id)
+
+        def create(id: Array[Byte], name: String, mimeType: String): OutputStream =
+          fs.create(id, name, mimeType)
+
+        def commit(id: Array[Byte]): Unit =
+          fs.commit(id)
+      }
+
+    new BackupArchiver(config, store, metrics, loggerStats)
+  }
+
+  private val threadCounter = new AtomicLong()
+
+  private val threadFactory: ThreadFactory =
+    (runnable: Runnable) => {
+
+      val thread = new Thread(runnable, s"neo4j-backup-${threadCounter.incrementAndGet()}")
+
+      thread.setDaemon(true)
+      thread
+    }
+
+  // scheduled and manual backups run on the same single thread
   private val scheduler =
-    Executors.newScheduledThreadPool(1)
+    Executors.newScheduledThreadPool(1, threadFactory)
+
+  private var current = Option.empty[BackupJobImpl]
 
   if (config.Backup.enabled && config.Backup.schedule) {
 
@@ -41,7 +75,7 @@ final class BackupManager(config: BundleConfig,
     scheduler.scheduleAtFixedRate(
       () => {
 
-        backup()
+        submitBackup()
       },
       config.Backup.interval.toMillis,
       config.Backup.interval.toMillis,
@@ -50,31 +84,75 @@ final class BackupManager(config: BundleConfig,
 
   def shutdown(): Unit = {
 
-    scheduler.shutdown()
-    scheduler.awaitTermination(Long.MaxValue, TimeUnit.MILLISECONDS)
+    synchronized {
+
+      current.foreach(_.cancel())
+    }
+
+    scheduler.shutdownNow()
+
+    // the online backup cannot be interrupted; it is left behind if it does not finish in time
+    if (!scheduler.awaitTermination(config.Backup.shutdownTimeout.toMillis, TimeUnit.MILLISECONDS))
+      logger.warning(s"The running backup did not stop within ${config.Backup.shutdownTimeout}.")
+
+    synchronized {
+
+      current.foreach(_.abandon())
+    }
+
+    if (config.Backup.enabled)
+      archiver.shutdown()
   }
 
+  // blocks until the backup has finished, however long it takes; submitBackup does not block
   def backup(): Unit =
+    Await.result(submitBackup().future, Duration.Inf)
+
+  def submitBackup(): BackupJob =
     synchronized {
 
-      if (config.Backup.enabled) {
+      if (!config.Backup.enabled)
+        throw new IllegalStateException("Cannot perform a backup, since backups are disabled.")
+
+      current match {
 
-        val start = Instant.now
-        val id = new Array[Byte](ObjectId.length)
+        case Some(job) if !job.isDone =>
+          job
 
-        database.foreach(_.backup())
+        case _ =>
 
-        FileUtils.using(fs.create(id, s"$id.zip", "application/zip")) {
-          outputStream =>
+          val job = new BackupJobImpl(() => progress)
 
-            FileUtils.zip(config.Backup.backupPath, outputStream)
-        }
+          current = Some(job)
 
-        fs.commit(id)
+          scheduler.execute(() => {
 
-        val end = Instant.now
+            job.run(() => performBackup(), () => performArchive())
 
-        loggerStats.info(s"A backup was performed in ${end.toEpochMilli - start.toEpochMilli} ms.")
+            if (job.isCancelled)
+              metrics.backupProgress.cancel()
+          })
+
+          job
       }
     }
+
+  private def progress: Double = {
+
+    val total = metrics.backupProgress.total
+
+    if (total == 0) 0d else metrics.backupProgress.read.toDouble / total
+  }
+
+  private def performBackup(): Unit = {
+
+    val start = System.nanoTime()
+
+    database.foreach(_.backup())
+
+    loggerStats.info(s"An online backup was performed in ${(System.nanoTime() - start) / 1000000} ms.")
+  }
+
+  private def performArchive(): Unit =
+    archiver.archive(config.Backup.backupPath)
 }
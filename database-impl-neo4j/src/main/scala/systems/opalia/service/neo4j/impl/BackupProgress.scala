@@ -0,0 +1,89 @@
+package systems.opalia.service.neo4j.impl
+
+import java.time.Instant
+import java.util.concurrent.atomic.AtomicLong
+import scala.collection.immutable.ListMap
+import systems.opalia.interfaces.json.JsonAst
+
+
+// the state of the running or last archive; it is part of the metrics, but it is not cleared by a reset
+final class BackupProgress {
+
+  private val bytesTotal = new AtomicLong()
+  private val bytesRead = new AtomicLong()
+  private val bytesWritten = new AtomicLong()
+
+  @volatile private var state = "idle"
+  @volatile private var started = Option.empty[Instant]
+  @volatile private var startedNanos = 0L
+  @volatile private var finishedNanos = Option.empty[Long]
+  @volatile private var throttle = Option.empty[BackupThrottle]
+
+  def begin(throttle: BackupThrottle): Unit = {
+
+    bytesTotal.set(0)
+    bytesRead.set(0)
+    bytesWritten.set(0)
+
+    this.throttle = Some(throttle)
+    started = Some(Instant.now)
+    startedNanos = System.nanoTime()
+    finishedNanos = None
+    state = "archiving"
+  }
+
+  def finish(succeeded: Boolean): Unit = {
+
+    finishedNanos = Some(System.nanoTime())
+    state = if (succeeded) "finished" else "failed"
+  }
+
+  // marks a failed archive as stopped by a cancellation
+  def cancel(): Unit =
+    if (state == "failed")
+      state = "cancelled"
+
+  def addTotal(bytes: Long): Unit =
+    bytesTotal.addAndGet(bytes)
+
+  def addRead(bytes: Long): Unit =
+    bytesRead.addAndGet(bytes)
+
+  def addWritten(bytes: Long): Unit =
+    bytesWritten.addAndGet(bytes)
+
+  def read: Long =
+    bytesRead.get
+
+  def written: Long =
+    bytesWritten.get
+
+  def total: Long =
+    bytesTotal.get
+
+  def toJson: JsonAst.JsonObject = {
+
+    val seconds = math.max(finishedNanos.getOrElse(System.nanoTime()) - startedNanos, 1L).toDouble / 1000000000
+
+    def rate(bytes: Long): JsonAst.JsonValue =
+      JsonAst.JsonNumberDouble(if (started.isEmpty) 0d else bytes / seconds)
+
+    def limit(value: Option[Double]): JsonAst.JsonValue =
+      value.map(x => JsonAst.JsonNumberDouble(x)).getOrElse(JsonAst.JsonNull)
+
+    JsonAst.JsonObject(ListMap(
+      "state" -> JsonAst.JsonString(state),
+      "started" -> started.map(x => JsonAst.JsonString(x.toString)).getOrElse(JsonAst.JsonNull),
+      "bytes_total" -> JsonAst.JsonNumberLong(bytesTotal.get),
+      "bytes_read" -> JsonAst.JsonNumberLong(bytesRead.get),
+      "bytes_written" -> JsonAst.JsonNumberLong(bytesWritten.get),
+      "progress" -> JsonAst.JsonNumberDouble(
+        if (bytesTotal.get == 0) (if (state == "archiving") 0d else 1d) else bytesRead.get.toDouble / bytesTotal.get),
+      "read_rate_bps" -> rate(bytesRead.get),
+      "write_rate_bps" -> rate(bytesWritten.get),
+      "read_limit_bps" -> limit(throttle.flatMap(_.readLimit)),
+      "write_limit_bps" -> limit(throttle.flatMap(_.writeLimit)),
+      "throttle_factor" -> JsonAst.JsonNumberDouble(throttle.map(_.currentFactor).getOrElse(1d))
+    ))
+  }
+}
@@ -0,0 +1,70 @@
+package systems.opalia.service.neo4j.impl
+
+import scala.concurrent.duration._
+
+
+// limits the bandwidth of the archiver; in adaptive mode the limits are lowered while transactions become slower
+final class BackupThrottle(config: BundleConfig,
+                           metrics: DatabaseMetrics) {
+
+  private val minimumFactor = 0.05
+  private val sampleInterval = 1 second
+
+  private val readLimiter = config.Backup.readRate.map(x => new RateLimiter(x.toDouble))
+  private val writeLimiter = config.Backup.writeRate.map(x => new RateLimiter(x.toDouble))
+
+  private var factor = 1d
+  private var sampled = System.nanoTime()
+  private var sampledCount = metrics.transactionTime.count
+  private var sampledSum = metrics.transactionTime.sum
+
+  def read(bytes: Long): Unit = {
+
+    adapt()
+    readLimiter.foreach(_.acquire(bytes))
+  }
+
+  def write(bytes: Long): Unit = {
+
+    adapt()
+    writeLimiter.foreach(_.acquire(bytes))
+  }
+
+  def readLimit: Option[Double] =
+    readLimiter.map(_.currentRate)
+
+  def writeLimit: Option[Double] =
+    writeLimiter.map(_.currentRate)
+
+  def currentFactor: Double =
+    synchronized {
+
+      factor
+    }
+
+  private def adapt(): Unit =
+    if (config.Backup.adaptive)
+      synchronized {
+
+        val now = System.nanoTime()
+
+        if (now - sampled >= sampleInterval.toNanos) {
+
+          val count = metrics.transactionTime.count
+          val sum = metrics.transactionTime.sum
+
+          // the mean transaction time within the last sample interval is compared against the target
+          if (count > sampledCount && (sum - sampledSum) / (count - sampledCount) > config.Backup.adaptiveLatency.toNanos)
+            factor = math.max(minimumFactor, factor / 2)
+          else
+            factor = math.min(1d, factor + 0.1)
+
+          readLimiter.foreach(_.setRate(config.Backup.readRate.get * factor))
+          writeLimiter.foreach(_.setRate(config.Backup.writeRate.get * factor))
+
+          sampled = now
+          sampledCount = count
+          sampledSum = sum
+        }
+      }
+}
@@ -2,10 +2,13 @@ package systems.opalia.service.neo4j.impl
 
 import com.typesafe.config.Config
 import java.nio.file.Path
+import java.util.zip.Deflater
 import scala.concurrent.duration._
+import scala.language.postfixOps
 import systems.opalia.commons.configuration.ConfigHelper._
 import systems.opalia.commons.configuration.Reader._
 import systems.opalia.commons.net.EndpointAddress
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseRetryReason
 
 
 final class BundleConfig(config: Config) {
@@ -16,9 +19,45 @@ final class BundleConfig(config: Config) {
   val txRetries: Int = config.as[Int]("database.tx-retries")
   val txBackoff: FiniteDuration = config.as[FiniteDuration]("database.tx-backoff")
 
+  val txBackoffMaximum: FiniteDuration =
+    config.as[Option[FiniteDuration]]("database.tx-backoff-maximum").getOrElse(txBackoff * 10)
+
+  val txBackoffJitter: BundleConfig.Jitter.Value =
+    config.as[Option[String]]("database.tx-backoff-jitter")
+      .map(x => BundleConfig.Jitter.values.find(_.toString == x)
+        .getOrElse(throw new IllegalArgumentException(s"Unsupported jitter for transaction backoff: $x")))
+      .getOrElse(BundleConfig.Jitter.Full)
+
+  val txRetryBudget: Option[FiniteDuration] = config.as[Option[FiniteDuration]]("database.tx-retry-budget")
+
+  // without a transaction timeout the database default of "dbms.transaction.timeout" applies
+  val txTimeout: Option[FiniteDuration] = config.as[Option[FiniteDuration]]("database.tx-timeout")
+  val statementTimeout: Option[FiniteDuration] = config.as[Option[FiniteDuration]]("database.statement-timeout")
+
+  val txRetryOn: Set[EmbeddedDatabaseRetryReason] =
+    config.as[Option[List[String]]]("database.tx-retry-on")
+      .map(_.map(x => EmbeddedDatabaseRetryReason.values.find(_.name.equalsIgnoreCase(x))
+        .getOrElse(throw new IllegalArgumentException(s"Unsupported reason for transaction retries: $x"))))
+      .getOrElse(List(EmbeddedDatabaseRetryReason.DEADLOCK, EmbeddedDatabaseRetryReason.TERMINATED))
+      .toSet
+
+  // lazy entities read their properties on access, which must happen inside the transaction
+  val lazyEntities: Boolean =
+    config.as[Option[String]]("database.entities").getOrElse("eager") match {
+
+      case "eager" => false
+      case "lazy" => true
+
+      case x =>
+        throw new IllegalArgumentException(s"Unsupported materialization of entities: $x")
+    }
+
   if (txRetries < 0)
     throw new IllegalArgumentException("Expect positive number for transaction retries.")
 
+  if (txBackoffMaximum < txBackoff)
+    throw new IllegalArgumentException("Expect maximum transaction backoff not less than transaction backoff.")
+
   object HighlyAvailable {
 
     val enabled: Boolean = config.as[Option[Boolean]]("database.ha.enabled").getOrElse(false)
@@ -32,6 +71,139 @@ final class BundleConfig(config: Config) {
     lazy val initialNodes: List[EndpointAddress] = config.as[List[EndpointAddress]]("database.ha.initial-nodes")
   }
 
+  object Async {
+
+    val parallelism: Int =
+      config.as[Option[Int]]("database.async.parallelism").getOrElse(Runtime.getRuntime.availableProcessors)
+
+    val queueSize: Int = config.as[Option[Int]]("database.async.queue-size").getOrElse(1024)
+    val virtualThreads: Boolean = config.as[Option[Boolean]]("database.async.virtual-threads").getOrElse(false)
+
+    if (parallelism < 1)
+      throw new IllegalArgumentException("Expect positive number for parallelism of asynchronous transactions.")
+
+    if (queueSize < 1)
+      throw new IllegalArgumentException("Expect positive number for queue size of asynchronous transactions.")
+  }
+
+  object Admission {
+
+    val enabled: Boolean = config.as[Option[Boolean]]("database.admission.enabled").getOrElse(false)
+
+    val maxConcurrent: Int =
+      config.as[Option[Int]]("database.admission.max-concurrent").getOrElse(Runtime.getRuntime.availableProcessors * 2)
+
+    // callers beyond the running transactions wait in this queue; further callers are rejected at once
+    val queueSize: Int = config.as[Option[Int]]("database.admission.queue-size").getOrElse(256)
+
+    val queueTimeout: FiniteDuration =
+      config.as[Option[FiniteDuration]]("database.admission.queue-timeout").getOrElse(5 seconds)
+
+    // lowers the limit while transactions take longer than the target latency and raises it again afterwards
+    val adaptive: Boolean = config.as[Option[Boolean]]("database.admission.adaptive").getOrElse(false)
+
+    val targetLatency: FiniteDuration =
+      config.as[Option[FiniteDuration]]("database.admission.target-latency").getOrElse(100 milliseconds)
+
+    val minConcurrent: Int = config.as[Option[Int]]("database.admission.min-concurrent").getOrElse(1)
+
+    if (maxConcurrent < 1 || minConcurrent < 1)
+      throw new IllegalArgumentException("Expect positive numbers for concurrent transactions.")
+
+    if (minConcurrent > maxConcurrent)
+      throw new IllegalArgumentException("Expect minimum of concurrent transactions not greater than maximum.")
+
+    if (queueSize < 0)
+      throw new IllegalArgumentException("Expect non-negative number for queue size of admission.")
+  }
+
+  object SlowQuery {
+
+    val threshold: Option[FiniteDuration] = config.as[Option[FiniteDuration]]("database.slow-query.threshold")
+
+    val profile: Boolean =
+      config.as[Option[String]]("database.slow-query.plan").getOrElse("plan") match {
+
+        case "plan" => false
+        case "profile" => true
+
+        case x =>
+          throw new IllegalArgumentException(s"Unsupported plan capture for slow queries: $x")
+      }
+  }
+
+  object LogBuffer {
+
+    // the Neo4j logs are handed to a background thread through a ring buffer of this size; zero logs synchronously
+    val size: Int = config.as[Option[Int]]("database.log-buffer.size").getOrElse(8192)
+
+    val blocking: Boolean =
+      config.as[Option[String]]("database.log-buffer.policy").getOrElse("block") match {
+
+        case "block" => true
+        case "drop" => false
+
+        case x =>
+          throw new IllegalArgumentException(s"Unsupported policy for a full log buffer: $x")
+      }
+  }
+
+  object Spill {
+
+    // results of execute with more rows than this are kept in memory-mapped files; zero keeps them on the heap
+    val threshold: Int = config.as[Option[Int]]("database.spill.threshold").getOrElse(1000000)
+
+    // the size of all spilled results at once; a statement that would exceed it fails
+    val maxBytes: Long = config.as[Option[Long]]("database.spill.max-bytes").getOrElse(8L * 1024 * 1024 * 1024)
+
+    val path: Path =
+      config.as[Option[Path]]("database.spill-path").map(_.normalize).getOrElse(deploymentPath.resolve("spill"))
+
+    if (threshold < 0)
+      throw new IllegalArgumentException("Expect non-negative number for spill threshold.")
+
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("Expect positive number for spill size limit.")
+  }
+
+  object Metrics {
+
+    val maxQueries: Int = config.as[Option[Int]]("database.metrics.max-queries").getOrElse(500)
+  }
+
+  object WarmUp {
+
+    val enabled: Boolean = config.as[Option[Boolean]]("database.warm-up.enabled").getOrElse(true)
+
+    // the number of the most frequent recorded statements planned at startup
+    val maxQueries: Int = config.as[Option[Int]]("database.warm-up.max-queries").getOrElse(100)
+    val maxRecorded: Int = config.as[Option[Int]]("database.warm-up.max-recorded").getOrElse(1000)
+
+    val parallelism: Int =
+      config.as[Option[Int]]("database.warm-up.parallelism")
+        .getOrElse(math.max(1, Runtime.getRuntime.availableProcessors / 2))
+
+    val budget: FiniteDuration = config.as[Option[FiniteDuration]]("database.warm-up.budget").getOrElse(30 seconds)
+  }
+
+  object QueryCache {
+
+    val enabled: Boolean = config.as[Option[Boolean]]("database.query-cache.enabled").getOrElse(false)
+
+    val maxEntries: Int = config.as[Option[Int]]("database.query-cache.max-entries").getOrElse(10000)
+
+    // larger results are not cached
+    val maxRows: Int = config.as[Option[Int]]("database.query-cache.max-rows").getOrElse(1000)
+
+    // the estimated size of all cached results on the heap
+    val maxBytes: Long = config.as[Option[Long]]("database.query-cache.max-bytes").getOrElse(64L * 1024 * 1024)
+
+    val ttl: FiniteDuration = config.as[Option[FiniteDuration]]("database.query-cache.ttl").getOrElse(60 seconds)
+
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("Expect positive number for query cache size limit.")
+  }
+
   object Backup {
 
     val enabled: Boolean = config.as[Option[Boolean]]("database.backup.enabled").getOrElse(false)
@@ -40,6 +212,45 @@ final class BundleConfig(config: Config) {
     lazy val backupPath: Path = config.as[Path]("database.backup-path").normalize
     lazy val server: EndpointAddress = config.as[EndpointAddress]("database.backup.server")
     lazy val interval: FiniteDuration = config.as[FiniteDuration]("database.backup.interval")
+
+    // the time a shutdown waits for a cancelled backup to stop
+    lazy val shutdownTimeout: FiniteDuration =
+      config.as[Option[FiniteDuration]]("database.backup.shutdown-timeout").getOrElse(30 seconds)
+
+    // the size of the content-addressed chunks in bytes
+    lazy val chunkSize: Int = config.as[Option[Int]]("database.backup.chunk-size").getOrElse(4 * 1024 * 1024)
+
+    // the chunks are hashed and compressed in parallel on this many threads
+    lazy val compressionThreads: Int =
+      config.as[Option[Int]]("database.backup.compression-threads")
+        .getOrElse(math.max(1, Runtime.getRuntime.availableProcessors / 2))
+
+    lazy val compressionLevel: Int =
+      config.as[Option[Int]]("database.backup.compression-level").getOrElse(Deflater.BEST_SPEED)
+
+    // the bandwidth limits of the archiver in bytes per second
+    lazy val readRate: Option[Long] = config.as[Option[Long]]("database.backup.read-rate")
+    lazy val writeRate: Option[Long] = config.as[Option[Long]]("database.backup.write-rate")
+
+    // lowers the limits while the mean transaction time is above the target latency
+    lazy val adaptive: Boolean = config.as[Option[Boolean]]("database.backup.adaptive").getOrElse(false)
+    lazy val adaptiveLatency: FiniteDuration =
+      config.as[Option[FiniteDuration]]("database.backup.adaptive-latency").getOrElse(50 milliseconds)
+
+    if (enabled && (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION))
+      throw new IllegalArgumentException("Expect number between -1 and 9 for backup compression level.")
+  }
+
+}
+
+object BundleConfig {
+
+  object Jitter
+    extends Enumeration {
+
+    val None: Value = Value("none")
+    val Full: Value = Value("full")
+    val Decorrelated: Value = Value("decorrelated")
   }
 
 }
@@ -0,0 +1,20 @@
+package systems.opalia.service.neo4j.impl
+
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader
+
+
+// maps column names to positions; it is built once per result and shared by all of its rows
+final class ColumnIndex(header: EmbeddedDatabaseQueryHeader) {
+
+  private val index = new java.util.HashMap[String, Integer](header.size * 2)
+
+  for (i <- (0 until header.size).reverse)
+    index.put(header.getColumn(i), i)
+
+  def indexOf(column: String): Int = {
+
+    val i = index.get(column)
+
+    if (i == null) -1 else i.intValue
+  }
+}
@@ -0,0 +1,71 @@
+package systems.opalia.service.neo4j.impl
+
+import scala.collection.JavaConverters._
+import systems.opalia.interfaces.database.Row
+import systems.opalia.interfaces.json.JsonAst
+import systems.opalia.service.neo4j.api.ColumnarResult
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabaseQueryColumn, EmbeddedDatabaseQueryColumnTable}
+
+
+final class ColumnarResultImpl(table: EmbeddedDatabaseQueryColumnTable,
+                               statistics: => JsonAst.JsonObject)
+  extends ColumnarResult {
+
+  private val index = new ColumnIndex(table.getHeader)
+  private val columnNames = table.getColumns.asScala.toVector
+
+  private val columnVector =
+    columnNames.indices.map(x => new ColumnarResultImpl.ColumnImpl(table.getColumn(x)))
+
+  private lazy val statisticsJson = statistics
+
+  lazy val rows: IndexedSeq[Row] =
+    new ConcreteRowSeq(table.getRows).map(x => new ConcreteRow(x, index))
+
+  def columns: IndexedSeq[String] =
+    columnNames
+
+  def meta: JsonAst.JsonObject =
+    statisticsJson
+
+  def size: Int =
+    table.size
+
+  def column(name: String): ColumnarResult.Column = {
+
+    val position = index.indexOf(name)
+
+    if (position == -1)
+      throw new IllegalArgumentException(s"Cannot find column with name $name.")
+
+    columnVector(position)
+  }
+}
+
+object ColumnarResultImpl {
+
+  private final class ColumnImpl(column: EmbeddedDatabaseQueryColumn)
+    extends ColumnarResult.Column {
+
+    def name: String =
+      column.getName
+
+    def size: Int =
+      column.size
+
+    def isNull(row: Int): Boolean =
+      column.isNull(row)
+
+    def long(row: Int): Long =
+      column.getLong(row)
+
+    def double(row: Int): Double =
+      column.getDouble(row)
+
+    def boolean(row: Int): Boolean =
+      column.getBoolean(row)
+
+    def value(row: Int): Any =
+      column.getObject(row)
+  }
+}
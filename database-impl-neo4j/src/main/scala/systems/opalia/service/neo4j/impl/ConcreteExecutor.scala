@@ -2,59 +2,84 @@ package systems.opalia.service.neo4j.impl
 
 import scala.collection.JavaConverters._
 import scala.collection.immutable.ListMap
+import scala.concurrent.duration.FiniteDuration
 import scala.reflect._
 import systems.opalia.interfaces.database._
 import systems.opalia.interfaces.json.JsonAst
-import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseService
+import systems.opalia.service.neo4j.api.{ColumnarResult, Neo4jExecutor, PreparedStatement, StreamingResult}
+import systems.opalia.service.neo4j.embedded.api._
 
 
-class ConcreteExecutor(service: EmbeddedDatabaseService)
-  extends Executor {
+class ConcreteExecutor(transactionService: EmbeddedDatabaseService,
+                       metrics: DatabaseMetrics,
+                       cache: QueryCache)
+  extends Neo4jExecutor {
 
-  def execute[R <: Result : ClassTag](clause: String, parameters: Map[String, Any]): R = {
+  private var service = transactionService
+  private var updated = false
 
-    if (!parameters.forall(_._1.isInstanceOf[String]))
-      throw new IllegalArgumentException(
-        s"Expect keys with type ${classOf[String].getName}.")
+  // true if a statement of this transaction changed the graph
+  def containsUpdates: Boolean =
+    updated
+
+  def execute[R <: Result : ClassTag](clause: String, parameters: Map[String, Any]): R =
+    toResult[R](query(clause, parameters, toJavaParameters(parameters), readOnly = true))
+
+  def execute[R <: Result : ClassTag](statement: PreparedStatement, parameters: Map[String, Any]): R = {
+
+    val prepared = PreparedStatementImpl(statement)
+
+    toResult[R](query(prepared.clause, parameters, prepared.bind(parameters), prepared.readOnly))
+  }
+
+  def withStatementTimeout[T](timeout: FiniteDuration)(block: => T): T = {
+
+    val previous = service
+
+    service = transactionService.withStatementTimeout(timeout.toMillis)
+
+    try {
+
+      block
+
+    } finally {
 
-    val table =
-      service.execute(
-        clause,
-        parameters.map(x => x._1 -> normalizeIn(x._2).asInstanceOf[AnyRef]).asJava
-      )
-
-    val statistics =
-      JsonAst.JsonObject(ListMap(
-        "nodes_created" -> JsonAst.JsonNumberInt(table.getStatistics.getNodesCreated),
-        "nodes_deleted" -> JsonAst.JsonNumberInt(table.getStatistics.getNodesDeleted),
-        "relationships_created" -> JsonAst.JsonNumberInt(table.getStatistics.getRelationshipsCreated),
-        "relationships_deleted" -> JsonAst.JsonNumberInt(table.getStatistics.getRelationshipsDeleted),
-        "properties_set" -> JsonAst.JsonNumberInt(table.getStatistics.getPropertiesSet),
-        "labels_added" -> JsonAst.JsonNumberInt(table.getStatistics.getLabelsAdded),
-        "labels_removed" -> JsonAst.JsonNumberInt(table.getStatistics.getLabelsRemoved),
-        "indexes_added" -> JsonAst.JsonNumberInt(table.getStatistics.getIndexesAdded),
-        "indexes_removed" -> JsonAst.JsonNumberInt(table.getStatistics.getIndexesRemoved),
-        "constraints_added" -> JsonAst.JsonNumberInt(table.getStatistics.getConstraintsAdded),
-        "constraints_removed" -> JsonAst.JsonNumberInt(table.getStatistics.getConstraintsRemoved),
-        "contains_updates" -> JsonAst.JsonBoolean(table.getStatistics.containsUpdates)
-      ))
+      service = previous
+    }
+  }
+
+  def prepare(clause: String): PreparedStatement =
+    new PreparedStatementImpl(service.prepare(clause))
+
+  private def toResult[R <: Result : ClassTag](table: EmbeddedDatabaseQueryTable): R = {
+
+    // most callers never read the statistics, so the JSON is only built on first access
+    lazy val statistics = toJson(table.getStatistics)
 
     val concreteResult =
       if (classTag[R] == classTag[IgnoredResult]) {
 
+        // the rows are never read, so rows spilled to disk are released right away
+        table.close()
+
         new IgnoredResult {
         }
 
       } else {
 
-        val rows = table.getRows.asScala.toVector.map(x => toScalaMap(x.getData))
+        val rows = new ConcreteRowSeq(table.getRows)
+        val index = new ColumnIndex(table.getHeader)
         val columnNames = table.getColumns.asScala.toVector
 
         if (classTag[R] == classTag[SingleResult]) {
 
-          if (rows.length != 1)
+          if (rows.length != 1) {
+
+            table.close()
+
             throw new IllegalArgumentException(
               s"Expect set of rows with cardinality of 1 but ${rows.length} received.")
+          }
 
           new SingleResult {
 
@@ -65,14 +90,18 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
               statistics
 
             def transform[T](f: Row => T): T =
-              rows.map(new ConcreteRow(_)).map(f).head
+              materialize(f(new ConcreteRow(rows.head, index)))
           }
 
         } else if (classTag[R] == classTag[SingleOptResult]) {
 
-          if (rows.length > 1)
+          if (rows.length > 1) {
+
+            table.close()
+
             throw new IllegalArgumentException(
               s"Expect set of rows with cardinality of 0 or 1 but ${rows.length} received.")
+          }
 
           new SingleOptResult {
 
@@ -83,7 +112,7 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
               statistics
 
             def transform[T](f: Row => T): Option[T] =
-              rows.map(new ConcreteRow(_)).map(f).headOption
+              materialize(rows.headOption.map(x => f(new ConcreteRow(x, index))))
           }
 
         } else if (classTag[R] == classTag[IndexedSeqResult]) {
@@ -97,7 +126,7 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
               statistics
 
             def transform[T](f: Row => T): IndexedSeq[T] =
-              rows.map(new ConcreteRow(_)).map(f)
+              materialize(rows.map(x => f(new ConcreteRow(x, index))))
           }
 
         } else if (classTag[R] == classTag[IndexedNonEmptySeqResult]) {
@@ -115,7 +144,7 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
               statistics
 
             def transform[T](f: Row => T): IndexedSeq[T] =
-              rows.map(new ConcreteRow(_)).map(f)
+              materialize(rows.map(x => f(new ConcreteRow(x, index))))
           }
 
         } else
@@ -126,29 +155,181 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
     concreteResult.asInstanceOf[R]
   }
 
-  private def normalizeIn(value: Any): Any = {
-    value match {
+  def executeColumnar(clause: String, parameters: Map[String, Any]): ColumnarResult = {
 
-      case null => null
-      case x: Boolean => x
-      case x: Byte => x
-      case x: Short => x
-      case x: Integer => x
-      case x: Long => x
-      case x: Float => x
-      case x: Double => x
-      case x: Char => x
-      case x: String => x
-      case x: Map[_, _] => toJavaMap(x)
-      case x: Seq[_] => x.map(normalizeIn).asJava
+    val start = System.nanoTime()
+    val table = service.executeColumnar(clause, toJavaParameters(parameters))
 
-      case _ =>
-        throw new IllegalArgumentException(
-          s"Cannot normalize value $value (${value.getClass.getName}).")
+    metrics.recordStatement(clause, System.nanoTime() - start, table.size)
+    metrics.recordStatistics(table.getStatistics)
+
+    updated ||= table.getStatistics.containsUpdates
+
+    new ColumnarResultImpl(table, toJson(table.getStatistics))
+  }
+
+  def stream(clause: String, parameters: Map[String, Any]): StreamingResult =
+    open(clause, toJavaParameters(parameters))
+
+  def stream(statement: PreparedStatement, parameters: Map[String, Any]): StreamingResult = {
+
+    val prepared = PreparedStatementImpl(statement)
+
+    open(prepared.clause, prepared.bind(parameters))
+  }
+
+  private def open(clause: String, javaParameters: java.util.Map[String, AnyRef]): StreamingResult = {
+
+    val start = System.nanoTime()
+    val cursor = service.stream(clause, javaParameters)
+    val columnNames = cursor.getColumns.asScala.toVector
+    val index = new ColumnIndex(cursor.getHeader)
+
+    new StreamingResult {
+
+      private var rows = 0
+      private var closed = false
+
+      def columns: IndexedSeq[String] =
+        columnNames
+
+      def meta: JsonAst.JsonObject =
+        toJson(cursor.getStatistics)
+
+      def transform[T](f: Row => T): Iterator[T] =
+        cursor.asScala.map {
+          x =>
+
+            rows += 1
+            f(new ConcreteRow(x, index))
+        }
+
+      // a streamed statement is timed from its start until it is closed
+      def close(): Unit =
+        if (!closed) {
+
+          closed = true
+          cursor.close()
+
+          metrics.recordStatement(clause, System.nanoTime() - start, rows)
+          metrics.recordStatistics(cursor.getStatistics)
+
+          updated ||= cursor.getStatistics.containsUpdates
+        }
+    }
+  }
+
+  def executeBatch(clause: String,
+                   records: Iterator[Map[String, Any]],
+                   batchSize: Int): EmbeddedDatabaseQueryStatistics = {
+
+    if (batchSize < 1)
+      throw new IllegalArgumentException("Expect positive number for batch size.")
+
+    val statement = s"UNWIND $$batch AS row\n$clause"
+    val statistics = new QueryStatisticsAccumulator()
+
+    records.grouped(batchSize).foreach {
+      group =>
+
+        val batch = new java.util.ArrayList[AnyRef](group.size)
+
+        group.foreach(x => batch.add(toJavaParameters(x)))
+
+        val start = System.nanoTime()
+        val result = service.executeUpdate(statement, java.util.Collections.singletonMap[String, AnyRef]("batch", batch))
+
+        metrics.recordStatement(statement, System.nanoTime() - start, 0)
+        metrics.recordStatistics(result)
+
+        updated ||= result.containsUpdates
+        statistics.add(result)
     }
+
+    statistics
   }
 
-  private def normalizeOut(value: Any): Any = {
+  // a transaction that has written sees its own changes, so it neither reads from nor writes to the cache
+  // a prepared statement that writes skips the cache; a plain clause is only known to write after it ran
+  private def query(clause: String,
+                    parameters: Map[String, Any],
+                    javaParameters: => java.util.Map[String, AnyRef],
+                    readOnly: Boolean): EmbeddedDatabaseQueryTable =
+    if (!cache.enabled || updated || !readOnly)
+      run(clause, javaParameters)
+    else {
+
+      val key = QueryCache.Key(clause, parameters)
+
+      cache.get(key) match {
+
+        case Some(table) =>
+          table
+
+        case None =>
+
+          val generation = cache.generation
+          val table = run(clause, javaParameters)
+
+          if (!updated)
+            cache.put(key, table, generation)
+
+          table
+      }
+    }
+
+  private def run(clause: String, javaParameters: java.util.Map[String, AnyRef]): EmbeddedDatabaseQueryTable = {
+
+    val start = System.nanoTime()
+    val table = service.execute(clause, javaParameters)
+
+    metrics.recordStatement(clause, System.nanoTime() - start, table.getRows.size)
+    metrics.recordStatistics(table.getStatistics)
+
+    updated ||= table.getStatistics.containsUpdates
+
+    table
+  }
+
+  private def materialize[T](block: => T): T = {
+
+    val start = System.nanoTime()
+    val result = block
+
+    metrics.recordMaterialization(System.nanoTime() - start)
+
+    result
+  }
+
+  private def toJavaParameters(parameters: Map[String, Any]): java.util.Map[String, AnyRef] = {
+
+    if (!parameters.forall(_._1.isInstanceOf[String]))
+      throw new IllegalArgumentException(
+        s"Expect keys with type ${classOf[String].getName}.")
+
+    parameters.map(x => x._1 -> ConcreteExecutor.normalizeIn(x._2).asInstanceOf[AnyRef]).asJava
+  }
+
+  private def toJson(statistics: EmbeddedDatabaseQueryStatistics): JsonAst.JsonObject =
+    JsonAst.JsonObject(ListMap(
+      "nodes_created" -> JsonAst.JsonNumberInt(statistics.getNodesCreated),
+      "nodes_deleted" -> JsonAst.JsonNumberInt(statistics.getNodesDeleted),
+      "relationships_created" -> JsonAst.JsonNumberInt(statistics.getRelationshipsCreated),
+      "relationships_deleted" -> JsonAst.JsonNumberInt(statistics.getRelationshipsDeleted),
+      "properties_set" -> JsonAst.JsonNumberInt(statistics.getPropertiesSet),
+      "labels_added" -> JsonAst.JsonNumberInt(statistics.getLabelsAdded),
+      "labels_removed" -> JsonAst.JsonNumberInt(statistics.getLabelsRemoved),
+      "indexes_added" -> JsonAst.JsonNumberInt(statistics.getIndexesAdded),
+      "indexes_removed" -> JsonAst.JsonNumberInt(statistics.getIndexesRemoved),
+      "constraints_added" -> JsonAst.JsonNumberInt(statistics.getConstraintsAdded),
+      "constraints_removed" -> JsonAst.JsonNumberInt(statistics.getConstraintsRemoved),
+      "contains_updates" -> JsonAst.JsonBoolean(statistics.containsUpdates)
+    ))
+}
+
+object ConcreteExecutor {
+
+  def normalizeIn(value: Any): Any = {
     value match {
 
       case null => null
@@ -161,8 +342,8 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
       case x: Double => x
       case x: Char => x
       case x: String => x
-      case x: java.util.Map[_, _] => toScalaMap(x)
-      case x: java.util.Collection[_] => x.asScala.toSeq.map(normalizeOut)
+      case x: Map[_, _] => toJavaMap(x)
+      case x: Seq[_] => x.map(normalizeIn).asJava
 
       case _ =>
         throw new IllegalArgumentException(
@@ -170,7 +351,7 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
     }
   }
 
-  private def toJavaMap(map: Map[_, _]): java.util.LinkedHashMap[String, Any] = {
+  def toJavaMap(map: Map[_, _]): java.util.LinkedHashMap[String, Any] = {
 
     val jmap = new java.util.LinkedHashMap[String, Any]
 
@@ -182,9 +363,4 @@ class ConcreteExecutor(service: EmbeddedDatabaseService)
 
     jmap
   }
-
-  private def toScalaMap(map: java.util.Map[_, _]): ListMap[String, Any] = {
-    ListMap(map.entrySet().iterator().asScala.toSeq
-      .map(x => (x.getKey.toString, normalizeOut(x.getValue))): _*)
-  }
 }
@@ -1,18 +1,28 @@
 package systems.opalia.service.neo4j.impl
 
+import scala.collection.JavaConverters._
 import scala.collection.immutable.ListMap
 import systems.opalia.interfaces.database._
 import systems.opalia.interfaces.json.JsonAst
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabaseEntity, EmbeddedDatabaseQueryRow}
 
 
-class ConcreteRow(row: ListMap[String, Any])
+class ConcreteRow(row: EmbeddedDatabaseQueryRow, index: ColumnIndex)
   extends Row {
 
-  protected def find(column: String): Option[Any] =
-    row.find(_._1 == column).map(_._2)
+  protected def find(column: String): Option[Any] = {
 
-  def toJson: JsonAst.JsonObject =
-    JsonAst.JsonObject(row.map(x => (x._1, transform(x._2))))
+    val i = index.indexOf(column)
+
+    if (i < 0) None else Some(ConcreteRow.normalizeOut(row.getValue(i)))
+  }
+
+  def toJson: JsonAst.JsonObject = {
+
+    val header = row.getHeader
+
+    JsonAst.JsonObject(ListMap((0 until header.size).map(i => (header.getColumn(i), transform(row.getValue(i)))): _*))
+  }
 
   private def transform(value: Any): JsonAst.JsonValue =
     value match {
@@ -27,11 +37,42 @@ class ConcreteRow(row: ListMap[String, Any])
       case x: Double => JsonAst.JsonNumberDouble(x)
       case x: Char => JsonAst.JsonString(x.toString)
       case x: String => JsonAst.JsonString(x)
-      case x: ListMap[_, _] => JsonAst.JsonObject(x.map(x => (x._1.toString, transform(x._2))))
-      case x: Seq[_] => JsonAst.JsonArray(x.map(transform).toVector)
+      case x: java.util.Map[_, _] =>
+        JsonAst.JsonObject(ListMap(x.asScala.toSeq.map(x => (x._1.toString, transform(x._2))): _*))
+      case x: java.util.Collection[_] => JsonAst.JsonArray(x.asScala.map(transform).toVector)
 
       case _ =>
         throw new IllegalArgumentException(
           s"Cannot build JSON AST with value $value (${value.getClass.getName}).")
     }
 }
+
+object ConcreteRow {
+
+  // scalar values are passed through as they are; only nested collections are converted on access
+  def normalizeOut(value: Any): Any =
+    value match {
+
+      case null => null
+      case x: Boolean => x
+      case x: Byte => x
+      case x: Short => x
+      case x: Integer => x
+      case x: Long => x
+      case x: Float => x
+      case x: Double => x
+      case x: Char => x
+      case x: String => x
+      case x: EmbeddedDatabaseEntity => new GraphEntityImpl(x)
+      case x: java.util.Map[_, _] => toScalaMap(x)
+      case x: java.util.Collection[_] => x.asScala.toSeq.map(normalizeOut)
+
+      case _ =>
+        throw new IllegalArgumentException(
+          s"Cannot normalize value $value (${value.getClass.getName}).")
+    }
+
+  private def toScalaMap(map: java.util.Map[_, _]): ListMap[String, Any] =
+    ListMap(map.entrySet().iterator().asScala.toSeq
+      .map(x => (x.getKey.toString, normalizeOut(x.getValue))): _*)
+}
@@ -0,0 +1,15 @@
+package systems.opalia.service.neo4j.impl
+
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow
+
+
+// read-only view on the rows of a table without copying them into a Scala collection
+final class ConcreteRowSeq(rows: java.util.List[EmbeddedDatabaseQueryRow])
+  extends IndexedSeq[EmbeddedDatabaseQueryRow] {
+
+  def length: Int =
+    rows.size
+
+  def apply(index: Int): EmbeddedDatabaseQueryRow =
+    rows.get(index)
+}
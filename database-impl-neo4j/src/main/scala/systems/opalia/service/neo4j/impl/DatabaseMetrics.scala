@@ -0,0 +1,351 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.{AtomicInteger, LongAdder}
+import scala.collection.JavaConverters._
+import scala.collection.immutable.ListMap
+import systems.opalia.interfaces.json.JsonAst
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabaseQueryStatistics, EmbeddedDatabaseRetryReason}
+
+
+final class DatabaseMetrics(config: BundleConfig) {
+
+  val transactionTime = new LatencyHistogram()
+  val statementTime = new LatencyHistogram()
+  val materializationTime = new LatencyHistogram()
+
+  val admissionWaitTime = new LatencyHistogram()
+
+  val backupProgress = new BackupProgress()
+
+  // gauges of the admission controller; they are not cleared by a reset
+  val admissionQueue = new AtomicInteger()
+  val admissionLimit = new AtomicInteger()
+
+  private val transactionsCommitted = new LongAdder()
+  private val transactionsRolledBack = new LongAdder()
+  private val retries = new LongAdder()
+  private val deadlocks = new LongAdder()
+  private val terminations = new LongAdder()
+  private val timeouts = new LongAdder()
+  private val rowsReturned = new LongAdder()
+
+  private val nodesCreated = new LongAdder()
+  private val nodesDeleted = new LongAdder()
+  private val relationshipsCreated = new LongAdder()
+  private val relationshipsDeleted = new LongAdder()
+  private val propertiesSet = new LongAdder()
+  private val labelsAdded = new LongAdder()
+  private val labelsRemoved = new LongAdder()
+  private val indexesAdded = new LongAdder()
+  private val indexesRemoved = new LongAdder()
+  private val constraintsAdded = new LongAdder()
+  private val constraintsRemoved = new LongAdder()
+  private val updatingStatements = new LongAdder()
+
+  private val admissions = new LongAdder()
+  private val rejections = new LongAdder()
+
+  private val cacheHits = new LongAdder()
+  private val cacheMisses = new LongAdder()
+  private val cacheEvictions = new LongAdder()
+  private val cacheRejections = new LongAdder()
+  private val cacheInvalidations = new LongAdder()
+
+  // the statements are tracked by their fingerprint, so clauses that only differ in their literals share an entry
+  private val queries = new ConcurrentHashMap[String, DatabaseMetrics.QueryMetrics]()
+  private val otherQueries = new DatabaseMetrics.QueryMetrics()
+
+  // the entry of each exact clause, so that the fingerprint is only computed the first time a clause is seen; since
+  // many clauses can share a fingerprint, up to ten clauses per tracked query are remembered
+  private val clauses = new ConcurrentHashMap[String, DatabaseMetrics.QueryMetrics]()
+  private val maxClauses = config.Metrics.maxQueries * 10
+
+  // the execution counts recorded for the plan warm-up; they are not cleared by a reset
+  private val workload = new ConcurrentHashMap[String, LongAdder]()
+
+  def recordTransaction(nanos: Long): Unit =
+    transactionTime.record(nanos)
+
+  def recordFinished(retryCount: Int, committed: Boolean): Unit = {
+
+    if (committed)
+      transactionsCommitted.increment()
+    else
+      transactionsRolledBack.increment()
+
+    retries.add(retryCount)
+  }
+
+  def recordFailure(reason: EmbeddedDatabaseRetryReason): Unit =
+    reason match {
+
+      case EmbeddedDatabaseRetryReason.DEADLOCK => deadlocks.increment()
+      case EmbeddedDatabaseRetryReason.TERMINATED => terminations.increment()
+      case EmbeddedDatabaseRetryReason.TIMEOUT => timeouts.increment()
+    }
+
+  def recordStatement(clause: String, nanos: Long, rows: Int): Unit = {
+
+    statementTime.record(nanos)
+    rowsReturned.add(rows)
+
+    val query = findClause(clause)
+
+    query.time.record(nanos)
+    query.rows.add(rows)
+
+    countWorkload(clause)
+  }
+
+  def recordMaterialization(nanos: Long): Unit =
+    materializationTime.record(nanos)
+
+  // the statistics of read-only statements are skipped, so these only cost a single call
+  def recordStatistics(statistics: EmbeddedDatabaseQueryStatistics): Unit =
+    if (statistics.containsUpdates) {
+
+      updatingStatements.increment()
+      nodesCreated.add(statistics.getNodesCreated)
+      nodesDeleted.add(statistics.getNodesDeleted)
+      relationshipsCreated.add(statistics.getRelationshipsCreated)
+      relationshipsDeleted.add(statistics.getRelationshipsDeleted)
+      propertiesSet.add(statistics.getPropertiesSet)
+      labelsAdded.add(statistics.getLabelsAdded)
+      labelsRemoved.add(statistics.getLabelsRemoved)
+      indexesAdded.add(statistics.getIndexesAdded)
+      indexesRemoved.add(statistics.getIndexesRemoved)
+      constraintsAdded.add(statistics.getConstraintsAdded)
+      constraintsRemoved.add(statistics.getConstraintsRemoved)
+    }
+
+  def recordAdmission(waitNanos: Long): Unit = {
+
+    admissions.increment()
+    admissionWaitTime.record(waitNanos)
+  }
+
+  def recordRejection(): Unit =
+    rejections.increment()
+
+  def recordCacheHit(): Unit =
+    cacheHits.increment()
+
+  def recordCacheMiss(): Unit =
+    cacheMisses.increment()
+
+  def recordCacheEviction(count: Int): Unit =
+    cacheEvictions.add(count)
+
+  def recordCacheRejection(): Unit =
+    cacheRejections.increment()
+
+  def recordCacheInvalidation(): Unit =
+    cacheInvalidations.increment()
+
+  // the execution count of each tracked clause by its exact text since startup
+  def queryCounts: Vector[(String, Long)] =
+    workload.asScala.toVector.map(x => x._1 -> x._2.sum)
+
+  def reset(): Unit = {
+
+    Seq(transactionTime, statementTime, materializationTime, admissionWaitTime).foreach(_.reset())
+
+    Seq(transactionsCommitted, transactionsRolledBack, retries, deadlocks, terminations, timeouts, rowsReturned,
+      nodesCreated, nodesDeleted, relationshipsCreated, relationshipsDeleted, propertiesSet, labelsAdded,
+      labelsRemoved, indexesAdded, indexesRemoved, constraintsAdded, constraintsRemoved, updatingStatements,
+      admissions, rejections, cacheHits, cacheMisses, cacheEvictions, cacheRejections, cacheInvalidations)
+      .foreach(_.reset())
+
+    clauses.clear()
+    queries.clear()
+    otherQueries.reset()
+  }
+
+  def toJson: JsonAst.JsonObject = {
+
+    def counter(x: LongAdder): JsonAst.JsonValue =
+      JsonAst.JsonNumberLong(x.sum)
+
+    val perQuery =
+      queries.asScala.toVector
+        .:+("<other>" -> otherQueries)
+        .filter(_._2.count > 0)
+        .sortBy(-_._2.count)
+        .map(x => x._2.toJson(x._1))
+
+    JsonAst.JsonObject(ListMap(
+      "transactions" -> JsonAst.JsonObject(ListMap(
+        "committed" -> counter(transactionsCommitted),
+        "rolled_back" -> counter(transactionsRolledBack),
+        "retries" -> counter(retries),
+        "deadlocks" -> counter(deadlocks),
+        "terminations" -> counter(terminations),
+        "timeouts" -> counter(timeouts),
+        "time" -> transactionTime.toJson
+      )),
+      "admission" -> JsonAst.JsonObject(ListMap(
+        "limit" -> JsonAst.JsonNumberInt(admissionLimit.get),
+        "queue_depth" -> JsonAst.JsonNumberInt(admissionQueue.get),
+        "admitted" -> counter(admissions),
+        "rejected" -> counter(rejections),
+        "wait_time" -> admissionWaitTime.toJson
+      )),
+      "statements" -> JsonAst.JsonObject(ListMap(
+        "rows_returned" -> counter(rowsReturned),
+        "time" -> statementTime.toJson,
+        "materialization_time" -> materializationTime.toJson
+      )),
+      "statistics" -> JsonAst.JsonObject(ListMap(
+        "updating_statements" -> counter(updatingStatements),
+        "nodes_created" -> counter(nodesCreated),
+        "nodes_deleted" -> counter(nodesDeleted),
+        "relationships_created" -> counter(relationshipsCreated),
+        "relationships_deleted" -> counter(relationshipsDeleted),
+        "properties_set" -> counter(propertiesSet),
+        "labels_added" -> counter(labelsAdded),
+        "labels_removed" -> counter(labelsRemoved),
+        "indexes_added" -> counter(indexesAdded),
+        "indexes_removed" -> counter(indexesRemoved),
+        "constraints_added" -> counter(constraintsAdded),
+        "constraints_removed" -> counter(constraintsRemoved)
+      )),
+      "query_cache" -> JsonAst.JsonObject(ListMap(
+        "hits" -> counter(cacheHits),
+        "misses" -> counter(cacheMisses),
+        "evictions" -> counter(cacheEvictions),
+        "rejections" -> counter(cacheRejections),
+        "invalidations" -> counter(cacheInvalidations)
+      )),
+      "queries" -> JsonAst.JsonArray(perQuery),
+      "backup" -> backupProgress.toJson
+    ))
+  }
+
+  private def countWorkload(clause: String): Unit = {
+
+    val count = workload.get(clause)
+
+    if (count != null)
+      count.increment()
+    else if (workload.size < config.WarmUp.maxRecorded)
+      workload.computeIfAbsent(clause, _ => new LongAdder()).increment()
+  }
+
+  private def findClause(clause: String): DatabaseMetrics.QueryMetrics = {
+
+    val query = clauses.get(clause)
+
+    if (query != null)
+      query
+    else {
+
+      val found = findQuery(DatabaseMetrics.fingerprint(clause))
+
+      if (clauses.size < maxClauses)
+        clauses.putIfAbsent(clause, found)
+
+      found
+    }
+  }
+
+  private def findQuery(clause: String): DatabaseMetrics.QueryMetrics = {
+
+    val query = queries.get(clause)
+
+    if (query != null)
+      query
+    else if (queries.size >= config.Metrics.maxQueries)
+      otherQueries
+    else {
+
+      val created = new DatabaseMetrics.QueryMetrics()
+      val existing = queries.putIfAbsent(clause, created)
+
+      if (existing != null) existing else created
+    }
+  }
+}
+
+object DatabaseMetrics {
+
+  // Collapses the whitespace of a clause and replaces its string and number literals by a placeholder.
+  def fingerprint(clause: String): String = {
+
+    val builder = new java.lang.StringBuilder(clause.length)
+    var i = 0
+
+    def isWord(x: Char): Boolean =
+      Character.isLetterOrDigit(x) || x == '_' || x == '$'
+
+    while (i < clause.length) {
+
+      val x = clause.charAt(i)
+
+      if (Character.isWhitespace(x)) {
+
+        while (i < clause.length && Character.isWhitespace(clause.charAt(i)))
+          i += 1
+
+        if (builder.length > 0 && i < clause.length)
+          builder.append(' ')
+
+      } else if (x == '\'' || x == '"') {
+
+        i += 1
+
+        while (i < clause.length && clause.charAt(i) != x)
+          i += (if (clause.charAt(i) == '\\') 2 else 1)
+
+        i += 1
+        builder.append('?')
+
+      } else if (x == '`') {
+
+        // an escaped identifier is kept as it is
+        val end = clause.indexOf('`', i + 1)
+        val next = if (end < 0) clause.length else end + 1
+
+        builder.append(clause, i, next)
+        i = next
+
+      } else if (Character.isDigit(x) && (builder.length == 0 || !isWord(builder.charAt(builder.length - 1)))) {
+
+        while (i < clause.length && (Character.isLetterOrDigit(clause.charAt(i)) || clause.charAt(i) == '.'))
+          i += 1
+
+        builder.append('?')
+
+      } else {
+
+        builder.append(x)
+        i += 1
+      }
+    }
+
+    builder.toString
+  }
+
+  final class QueryMetrics {
+
+    val time = new LatencyHistogram()
+    val rows = new LongAdder()
+
+    def count: Long =
+      time.count
+
+    def reset(): Unit = {
+
+      time.reset()
+      rows.reset()
+    }
+
+    def toJson(query: String): JsonAst.JsonObject =
+      JsonAst.JsonObject(ListMap(
+        "query" -> JsonAst.JsonString(query),
+        "rows_returned" -> JsonAst.JsonNumberLong(rows.sum),
+        "time" -> time.toJson
+      ))
+  }
+
+}
@@ -1,13 +1,16 @@
 package systems.opalia.service.neo4j.impl
 
 import scala.language.postfixOps
+import scala.util.control.NonFatal
 import systems.opalia.commons.io.FileUtils
 import systems.opalia.interfaces.database._
+import systems.opalia.interfaces.json.JsonAst
 import systems.opalia.interfaces.logging.LoggingService
 import systems.opalia.interfaces.rendering.Renderer
 import systems.opalia.interfaces.soa.Bootable
 import systems.opalia.interfaces.vfs.VfsService
-import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabase, EmbeddedDatabaseFactory}
+import systems.opalia.service.neo4j.api.{BackupJob, DatabaseBackupService, DatabaseMetricsService, Neo4jTransactional}
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabase, EmbeddedDatabaseFactory, EmbeddedDatabaseSettings}
 
 
 final class DatabaseServiceBootable(config: BundleConfig,
@@ -15,30 +18,82 @@ final class DatabaseServiceBootable(config: BundleConfig,
                                     loggingService: LoggingService,
                                     vfsService: VfsService)
   extends DatabaseService
+    with DatabaseMetricsService
+    with DatabaseBackupService
     with Bootable[Unit, Unit] {
 
-  private val database = configDatabase(config, factory, loggingService)
-
   private val logger = loggingService.newLogger(classOf[DatabaseService].getName)
   private val loggerStats = loggingService.newLogger(s"${classOf[DatabaseService].getName}-statistics")
 
-  private val backupManager: BackupManager = new BackupManager(config, factory, logger, loggerStats, vfsService)
+  private val databaseMetrics = new DatabaseMetrics(config)
+
+  private val queryCache = new QueryCache(config, databaseMetrics)
+
+  private val queryWorkload = new QueryWorkload(config, databaseMetrics, logger, loggerStats)
+
+  private val database = configDatabase(config, factory, loggingService)
+
+  private val transactionExecutor = new TransactionExecutor(config)
+
+  private val admission = new AdmissionController(config, databaseMetrics)
+
+  private val backupManager: BackupManager =
+    new BackupManager(config, factory, logger, loggerStats, vfsService, databaseMetrics)
 
   def newTransactional(): Transactional =
-    new TransactionalImpl(database, logger, loggerStats)
+    new TransactionalImpl(
+      database,
+      admission,
+      transactionExecutor,
+      databaseMetrics,
+      queryCache,
+      logger,
+      loggerStats,
+      config.txTimeout,
+      config.statementTimeout)
 
   def backup(): Unit =
     backupManager.backup()
 
+  def submitBackup(): BackupJob =
+    backupManager.submitBackup()
+
+  def metrics: JsonAst.JsonObject =
+    databaseMetrics.toJson
+
+  def resetMetrics(): Unit =
+    databaseMetrics.reset()
+
   protected def setupTask(): Unit = {
 
     database.waitAvailable(Long.MaxValue)
+
+    // the service is reported up only after the recorded statements are planned
+    queryWorkload.warmUp(Neo4jTransactional(newTransactional()))
   }
 
   protected def shutdownTask(): Unit = {
 
-    backupManager.shutdown()
-    database.shutdown()
+    try {
+
+      backupManager.shutdown()
+      transactionExecutor.shutdown()
+
+      try {
+
+        queryWorkload.record()
+
+      } catch {
+
+        case NonFatal(e) =>
+
+          logger.warning("Cannot record the query workload for the next startup.", e)
+      }
+
+    } finally {
+
+      database.shutdown()
+    }
   }
 
   private def configDatabase(config: BundleConfig,
@@ -72,13 +127,18 @@ final class DatabaseServiceBootable(config: BundleConfig,
         }
     }
 
-    factory
-      .newEmbeddedDatabase(
+    factory.newEmbeddedDatabase(
+      new EmbeddedDatabaseSettings(
         dbConfigFile,
         config.graphPath,
         new EmbeddedDatabaseLoggingProviderImpl(loggingService),
-        config.HighlyAvailable.enabled,
-        config.txRetries,
-        config.txBackoff.toMillis)
+        new TransactionRetryPolicy(config, databaseMetrics, loggerStats))
+        .setHighlyAvailable(config.HighlyAvailable.enabled)
+        .setSlowQueryThreshold(config.SlowQuery.threshold.map(_.toMillis).getOrElse(-1L))
+        .setSlowQueryProfile(config.SlowQuery.profile)
+        .setLogBufferSize(config.LogBuffer.size)
+        .setLogBufferBlocking(config.LogBuffer.blocking)
+        .setLazyEntities(config.lazyEntities)
+        .setSpill(config.Spill.path, config.Spill.threshold, config.Spill.maxBytes))
   }
 }
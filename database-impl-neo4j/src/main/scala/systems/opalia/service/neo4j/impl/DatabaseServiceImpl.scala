@@ -5,16 +5,22 @@ import org.osgi.service.component.annotations._
 import scala.concurrent.Await
 import scala.concurrent.duration.Duration
 import systems.opalia.interfaces.database.{DatabaseService, Transactional}
+import systems.opalia.interfaces.json.JsonAst
 import systems.opalia.interfaces.logging.LoggingService
 import systems.opalia.interfaces.soa.ConfigurationService
 import systems.opalia.interfaces.soa.osgi.ServiceManager
 import systems.opalia.interfaces.vfs.VfsService
+import systems.opalia.service.neo4j.api.{BackupJob, DatabaseBackupService, DatabaseMetricsService}
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseFactory
 
 
-@Component(service = Array(classOf[DatabaseService]), immediate = true)
+@Component(
+  service = Array(classOf[DatabaseService], classOf[DatabaseMetricsService], classOf[DatabaseBackupService]),
+  immediate = true)
 class DatabaseServiceImpl
-  extends DatabaseService {
+  extends DatabaseService
+    with DatabaseMetricsService
+    with DatabaseBackupService {
 
   private val serviceManager: ServiceManager = new ServiceManager()
   private var bootable: DatabaseServiceBootable = _
@@ -62,4 +68,13 @@ class DatabaseServiceImpl
 
   def backup(): Unit =
     bootable.backup()
+
+  def submitBackup(): BackupJob =
+    bootable.submitBackup()
+
+  def metrics: JsonAst.JsonObject =
+    bootable.metrics
+
+  def resetMetrics(): Unit =
+    bootable.resetMetrics()
 }
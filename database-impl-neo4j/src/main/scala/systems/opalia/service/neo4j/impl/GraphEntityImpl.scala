@@ -0,0 +1,43 @@
+package systems.opalia.service.neo4j.impl
+
+import scala.collection.JavaConverters._
+import scala.collection.immutable.ListMap
+import systems.opalia.service.neo4j.api.GraphEntity
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseEntity
+
+
+// a lookup by key reads a single property of a lazy entity; an iteration reads all of them
+final class GraphEntityImpl(entity: EmbeddedDatabaseEntity)
+  extends scala.collection.immutable.AbstractMap[String, Any]
+    with GraphEntity {
+
+  def id: Long =
+    entity.getId
+
+  def isNode: Boolean =
+    entity.isNode
+
+  lazy val labels: IndexedSeq[String] =
+    entity.getLabels.asScala.toVector
+
+  def relationshipType: Option[String] =
+    Option(entity.getType)
+
+  def project(keys: String*): GraphEntity =
+    new GraphEntityImpl(entity.project(keys.asJava))
+
+  def get(key: String): Option[Any] =
+    Option(entity.get(key)).map(ConcreteRow.normalizeOut)
+
+  override def contains(key: String): Boolean =
+    entity.containsKey(key)
+
+  def iterator: Iterator[(String, Any)] =
+    entity.entrySet.iterator.asScala.map(x => (x.getKey, ConcreteRow.normalizeOut(x.getValue)))
+
+  def +[V1 >: Any](kv: (String, V1)): Map[String, V1] =
+    ListMap(iterator.toSeq: _*) + kv
+
+  def -(key: String): Map[String, Any] =
+    ListMap(iterator.toSeq: _*) - key
+}
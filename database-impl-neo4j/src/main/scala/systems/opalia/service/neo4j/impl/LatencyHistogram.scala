@@ -0,0 +1,77 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray, LongAdder}
+import scala.collection.immutable.ListMap
+import systems.opalia.interfaces.json.JsonAst
+
+
+// records durations in power-of-two buckets of nanoseconds without allocating on the recording path
+final class LatencyHistogram {
+
+  private val buckets = new AtomicLongArray(64)
+  private val total = new LongAdder()
+  private val maximum = new AtomicLong()
+
+  def record(nanos: Long): Unit = {
+
+    val value = math.max(0L, nanos)
+
+    buckets.incrementAndGet(63 - java.lang.Long.numberOfLeadingZeros(value | 1L))
+    total.add(value)
+
+    var current = maximum.get
+
+    while (value > current && !maximum.compareAndSet(current, value))
+      current = maximum.get
+  }
+
+  def count: Long =
+    (0 until buckets.length).map(buckets.get).sum
+
+  def sum: Long =
+    total.sum
+
+  def reset(): Unit = {
+
+    for (i <- 0 until buckets.length)
+      buckets.set(i, 0)
+
+    total.reset()
+    maximum.set(0)
+  }
+
+  def toJson: JsonAst.JsonObject = {
+
+    val counts = (0 until buckets.length).map(buckets.get)
+    val count = counts.sum
+
+    // a percentile is reported as the upper bound of the bucket it falls into
+    def percentile(p: Double): Long =
+      if (count == 0)
+        0
+      else {
+
+        val threshold = math.ceil(count * p).toLong
+        var accumulated = 0L
+        var i = 0
+
+        while (accumulated + counts(i) < threshold) {
+
+          accumulated += counts(i)
+          i += 1
+        }
+
+        math.min(maximum.get, if (i >= 62) Long.MaxValue else (1L << (i + 1)) - 1)
+      }
+
+    JsonAst.JsonObject(ListMap(
+      "count" -> JsonAst.JsonNumberLong(count),
+      "mean_us" -> JsonAst.JsonNumberDouble(if (count == 0) 0d else total.sum.toDouble / count / 1000),
+      "max_us" -> JsonAst.JsonNumberDouble(maximum.get.toDouble / 1000),
+      "p50_us" -> JsonAst.JsonNumberDouble(percentile(0.5).toDouble / 1000),
+      "p90_us" -> JsonAst.JsonNumberDouble(percentile(0.9).toDouble / 1000),
+      "p99_us" -> JsonAst.JsonNumberDouble(percentile(0.99).toDouble / 1000),
+      "p999_us" -> JsonAst.JsonNumberDouble(percentile(0.999).toDouble / 1000)
+    ))
+  }
+}
@@ -0,0 +1,142 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent.atomic.AtomicReferenceArray
+import scala.collection.JavaConverters._
+import systems.opalia.service.neo4j.api.PreparedStatement
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabasePreparedStatement
+
+
+final class PreparedStatementImpl(statement: EmbeddedDatabasePreparedStatement)
+  extends PreparedStatement {
+
+  val clause: String = statement.getClause
+  val parameterNames: IndexedSeq[String] = statement.getParameterNames.asScala.toVector
+  val readOnly: Boolean = statement.isReadOnly
+
+  private val names = parameterNames.toArray
+
+  // the converter of a parameter is chosen by the class of its first value and replaced only if the class changes
+  private val converters = new AtomicReferenceArray[PreparedStatementImpl.Converter](names.length)
+
+  // the found parameters are required; any further parameter is passed as well, since a legacy parameter in the
+  // position of a map projection is not found in the clause
+  def bind(parameters: Map[String, Any]): java.util.Map[String, AnyRef] = {
+
+    val result = new java.util.HashMap[String, AnyRef]((parameters.size / 0.75f).toInt + 1)
+    var i = 0
+
+    while (i < names.length) {
+
+      val name = names(i)
+
+      val value =
+        parameters.getOrElse(name,
+          throw new IllegalArgumentException(s"Expect parameter $name for prepared statement."))
+
+      result.put(name, convert(i, value))
+      i += 1
+    }
+
+    if (parameters.size > names.length)
+      parameters.foreach {
+        case (name, value) =>
+
+          if (!result.containsKey(name))
+            result.put(name, ConcreteExecutor.normalizeIn(value).asInstanceOf[AnyRef])
+      }
+
+    result
+  }
+
+  private def convert(index: Int, value: Any): AnyRef = {
+
+    val converter = converters.get(index)
+
+    if (converter != null && converter.accepts(value))
+      converter.convert(value)
+    else {
+
+      val created = PreparedStatementImpl.Converter(value)
+
+      converters.set(index, created)
+      created.convert(value)
+    }
+  }
+}
+
+object PreparedStatementImpl {
+
+  def apply(statement: PreparedStatement): PreparedStatementImpl =
+    statement match {
+
+      case x: PreparedStatementImpl => x
+
+      case _ =>
+        throw new IllegalArgumentException(
+          s"Expect prepared statement with type ${classOf[PreparedStatementImpl].getName}.")
+    }
+
+  sealed trait Converter {
+
+    def accepts(value: Any): Boolean
+
+    def convert(value: Any): AnyRef
+  }
+
+  object Converter {
+
+    def apply(value: Any): Converter =
+      value match {
+
+        case null => NullConverter
+        case _: Map[_, _] => MapConverter
+        case _: Seq[_] => SeqConverter
+
+        // the value is checked once; later values of the same class are passed through unchanged
+        case x =>
+          ConcreteExecutor.normalizeIn(x)
+          new ScalarConverter(x.getClass)
+      }
+  }
+
+  final class ScalarConverter(clazz: Class[_])
+    extends Converter {
+
+    def accepts(value: Any): Boolean =
+      value != null && (value.getClass eq clazz)
+
+    def convert(value: Any): AnyRef =
+      value.asInstanceOf[AnyRef]
+  }
+
+  object NullConverter
+    extends Converter {
+
+    def accepts(value: Any): Boolean =
+      value == null
+
+    def convert(value: Any): AnyRef =
+      null
+  }
+
+  object MapConverter
+    extends Converter {
+
+    def accepts(value: Any): Boolean =
+      value.isInstanceOf[Map[_, _]]
+
+    def convert(value: Any): AnyRef =
+      ConcreteExecutor.normalizeIn(value).asInstanceOf[AnyRef]
+  }
+
+  object SeqConverter
+    extends Converter {
+
+    def accepts(value: Any): Boolean =
+      value.isInstanceOf[Seq[_]]
+
+    def convert(value: Any): AnyRef =
+      ConcreteExecutor.normalizeIn(value).asInstanceOf[AnyRef]
+  }
+
+}
@@ -0,0 +1,258 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent.atomic.AtomicLong
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabaseEntity, EmbeddedDatabaseQueryTable}
+
+
+// Caches the tables of read-only statements by clause and parameters. Each segment keeps its entries in LRU order and
+// admits a new entry over the LRU victims only if the new key was accessed more often recently (TinyLFU). The entries
+// of a segment are bounded in number and in their estimated size on the heap. Any committed transaction with updates
+// starts a new generation, which makes all older entries stale.
+final class QueryCache(config: BundleConfig,
+                       metrics: DatabaseMetrics) {
+
+  // a cached result outlives its transaction, so it must not contain lazy entities
+  val enabled: Boolean = config.QueryCache.enabled && !config.lazyEntities
+
+  private val segmentCount = 16
+  private val generationCounter = new AtomicLong()
+
+  private val segments =
+    Array.fill(segmentCount)(new QueryCache.Segment(
+      math.max(1, config.QueryCache.maxEntries / segmentCount),
+      math.max(1L, config.QueryCache.maxBytes / segmentCount)))
+
+  def generation: Long =
+    generationCounter.get
+
+  // a miss is only counted by put, since a write statement can never hit and must not skew the hit ratio
+  def get(key: QueryCache.Key): Option[EmbeddedDatabaseQueryTable] = {
+
+    val result = segment(key).get(key, generationCounter.get, System.nanoTime())
+
+    if (result.isDefined)
+      metrics.recordCacheHit()
+
+    result
+  }
+
+  // the generation must be taken before the statement runs, so that a write committed meanwhile is not hidden
+  def put(key: QueryCache.Key, table: EmbeddedDatabaseQueryTable, generation: Long): Unit =
+    if (table.isReadOnly) {
+
+      metrics.recordCacheMiss()
+
+      // a spilled table is mapped from a file and may be released by its reader, so it is never cached
+      if (!table.isSpilled && table.getRows.size <= config.QueryCache.maxRows) {
+
+        val bytes = QueryCache.estimate(table)
+        val expires = System.nanoTime() + config.QueryCache.ttl.toNanos
+
+        segment(key).put(key, table, bytes, generation, generationCounter.get, expires).foreach {
+
+          case QueryCache.Evicted(count) => metrics.recordCacheEviction(count)
+          case QueryCache.Rejected => metrics.recordCacheRejection()
+        }
+      }
+    }
+
+  def invalidate(): Unit = {
+
+    generationCounter.incrementAndGet()
+    metrics.recordCacheInvalidation()
+  }
+
+  private def segment(key: QueryCache.Key): QueryCache.Segment =
+    segments(Math.floorMod(key.hashCode, segmentCount))
+}
+
+object QueryCache {
+
+  final case class Key(clause: String, parameters: Map[String, Any]) {
+
+    // the key is hashed several times per lookup, so the hash is computed once
+    override val hashCode: Int =
+      scala.util.hashing.MurmurHash3.productHash(this)
+  }
+
+  sealed trait Outcome
+
+  final case class Evicted(count: Int) extends Outcome
+
+  case object Rejected extends Outcome
+
+  // A rough estimate of the heap taken by the rows of a table, assuming a 64-bit JVM with compressed references.
+  def estimate(table: EmbeddedDatabaseQueryTable): Long = {
+
+    val columns = table.getColumns.size
+    var bytes = 64L
+
+    table.getRows.forEach {
+      row =>
+
+        bytes += 32 + 4L * columns
+
+        for (i <- 0 until columns)
+          bytes += estimate(row.getValue(i))
+    }
+
+    bytes
+  }
+
+  private def estimate(value: Any): Long =
+    value match {
+
+      case null => 0
+      case x: String => 40 + 2L * x.length
+      case x: EmbeddedDatabaseEntity => 64 + estimate(x.getLabels) + estimate(x.getType) + estimateEntries(x)
+      case x: java.util.Map[_, _] => 48 + estimateEntries(x)
+      case x: java.util.Collection[_] => 24 + x.asScala.map(y => 4 + estimate(y)).sum
+      case _ => 16
+    }
+
+  private def estimateEntries(map: java.util.Map[_, _]): Long =
+    map.entrySet.asScala.map(x => 32 + estimate(x.getKey) + estimate(x.getValue)).sum
+
+  private final class Entry(val key: Key,
+                            val table: EmbeddedDatabaseQueryTable,
+                            val bytes: Long,
+                            val generation: Long,
+                            val expires: Long)
+
+  private final class Segment(capacity: Int, maxBytes: Long) {
+
+    private val entries = new java.util.LinkedHashMap[Key, Entry](capacity * 2, 0.75f, true)
+    private val sketch = new FrequencySketch(capacity)
+    private var usedBytes = 0L
+
+    // only a hit is counted in the sketch here; a read-only miss is counted by put
+    def get(key: Key, generation: Long, now: Long): Option[EmbeddedDatabaseQueryTable] =
+      synchronized {
+
+        val entry = entries.get(key)
+
+        if (entry == null)
+          None
+        else if (isStale(entry, generation, now)) {
+
+          remove(key)
+          None
+
+        } else {
+
+          sketch.increment(key.hashCode)
+          Some(entry.table)
+        }
+      }
+
+    def put(key: Key,
+            table: EmbeddedDatabaseQueryTable,
+            bytes: Long,
+            entryGeneration: Long,
+            generation: Long,
+            expires: Long): Option[Outcome] =
+      synchronized {
+
+        sketch.increment(key.hashCode)
+
+        if (entryGeneration != generation)
+          None
+        else if (bytes > maxBytes)
+          Some(Rejected)
+        else {
+
+          remove(key)
+
+          // the victims are taken in LRU order until the new entry fits; all of them must be stale or used less often
+          val now = System.nanoTime()
+          val frequency = sketch.frequency(key.hashCode)
+          val iterator = entries.values.iterator
+          val victims = mutable.ArrayBuffer[Entry]()
+          var freedBytes = 0L
+          var admitted = true
+
+          while (admitted && (entries.size - victims.size >= capacity || usedBytes - freedBytes + bytes > maxBytes)) {
+
+            val victim = iterator.next()
+
+            if (isStale(victim, generation, now) || frequency > sketch.frequency(victim.key.hashCode)) {
+
+              victims += victim
+              freedBytes += victim.bytes
+
+            } else
+              admitted = false
+          }
+
+          if (!admitted)
+            Some(Rejected)
+          else {
+
+            victims.foreach(x => remove(x.key))
+
+            entries.put(key, new Entry(key, table, bytes, entryGeneration, expires))
+            usedBytes += bytes
+
+            val evicted = victims.count(x => !isStale(x, generation, now))
+
+            if (evicted > 0) Some(Evicted(evicted)) else None
+          }
+        }
+      }
+
+    private def remove(key: Key): Unit = {
+
+      val entry = entries.remove(key)
+
+      if (entry != null)
+        usedBytes -= entry.bytes
+    }
+
+    private def isStale(entry: Entry, generation: Long, now: Long): Boolean =
+      entry.generation != generation || now - entry.expires > 0
+  }
+
+  // a count-min sketch with four rows of saturating counters; all counters are halved periodically, so that the
+  // frequencies reflect recent accesses
+  private final class FrequencySketch(capacity: Int) {
+
+    private val width = Integer.highestOneBit(math.max(16, capacity * 4) * 2 - 1)
+    private val counters = Array.ofDim[Byte](4, width)
+    private val sampleSize = 10 * math.max(16, capacity)
+    private var additions = 0
+
+    def frequency(hash: Int): Int =
+      (0 until 4).map(i => counters(i)(index(hash, i)).toInt).min
+
+    def increment(hash: Int): Unit = {
+
+      for (i <- 0 until 4) {
+
+        val j = index(hash, i)
+
+        if (counters(i)(j) < 15)
+          counters(i)(j) = (counters(i)(j) + 1).toByte
+      }
+
+      additions += 1
+
+      if (additions >= sampleSize) {
+
+        for (row <- counters; j <- row.indices)
+          row(j) = (row(j) >> 1).toByte
+
+        additions = 0
+      }
+    }
+
+    private def index(hash: Int, row: Int): Int = {
+
+      val mixed = (hash ^ (hash >>> 16)) * (0x9e3779b9 + row * 0x7f4a7c15)
+
+      (mixed ^ (mixed >>> 15)) & (width - 1)
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+package systems.opalia.service.neo4j.impl
+
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics
+
+
+// sums up the statistics of several queries; it is not thread-safe
+final class QueryStatisticsAccumulator
+  extends EmbeddedDatabaseQueryStatistics {
+
+  private var nodesCreated = 0
+  private var nodesDeleted = 0
+  private var relationshipsCreated = 0
+  private var relationshipsDeleted = 0
+  private var propertiesSet = 0
+  private var labelsAdded = 0
+  private var labelsRemoved = 0
+  private var indexesAdded = 0
+  private var indexesRemoved = 0
+  private var constraintsAdded = 0
+  private var constraintsRemoved = 0
+  private var updates = false
+
+  def add(statistics: EmbeddedDatabaseQueryStatistics): Unit = {
+
+    nodesCreated += statistics.getNodesCreated
+    nodesDeleted += statistics.getNodesDeleted
+    relationshipsCreated += statistics.getRelationshipsCreated
+    relationshipsDeleted += statistics.getRelationshipsDeleted
+    propertiesSet += statistics.getPropertiesSet
+    labelsAdded += statistics.getLabelsAdded
+    labelsRemoved += statistics.getLabelsRemoved
+    indexesAdded += statistics.getIndexesAdded
+    indexesRemoved += statistics.getIndexesRemoved
+    constraintsAdded += statistics.getConstraintsAdded
+    constraintsRemoved += statistics.getConstraintsRemoved
+    updates |= statistics.containsUpdates
+  }
+
+  def getNodesCreated: Int =
+    nodesCreated
+
+  def getNodesDeleted: Int =
+    nodesDeleted
+
+  def getRelationshipsCreated: Int =
+    relationshipsCreated
+
+  def getRelationshipsDeleted: Int =
+    relationshipsDeleted
+
+  def getPropertiesSet: Int =
+    propertiesSet
+
+  def getLabelsAdded: Int =
+    labelsAdded
+
+  def getLabelsRemoved: Int =
+    labelsRemoved
+
+  def getIndexesAdded: Int =
+    indexesAdded
+
+  def getIndexesRemoved: Int =
+    indexesRemoved
+
+  def getConstraintsAdded: Int =
+    constraintsAdded
+
+  def getConstraintsRemoved: Int =
+    constraintsRemoved
+
+  def containsUpdates: Boolean =
+    updates
+}
@@ -0,0 +1,159 @@
+package systems.opalia.service.neo4j.impl
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, StandardCopyOption}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.util.concurrent.{Executors, ThreadFactory, TimeUnit}
+import scala.collection.JavaConverters._
+import scala.util.Try
+import scala.util.control.NonFatal
+import systems.opalia.interfaces.logging.Logger
+import systems.opalia.service.neo4j.api.Neo4jTransactional
+
+
+// Records how often each clause was executed and plans the most frequent clauses of the previous run at startup, so
+// that the first requests after a deployment do not pay for planning.
+final class QueryWorkload(config: BundleConfig,
+                          metrics: DatabaseMetrics,
+                          logger: Logger,
+                          loggerStats: Logger) {
+
+  private val path = config.deploymentPath.resolve("query-workload.txt")
+
+  // the counts of the previous runs are kept with half their weight, so that old statements fade out
+  private val previous: Map[String, Long] =
+    if (config.WarmUp.enabled && Files.exists(path))
+      Files.readAllLines(path, StandardCharsets.UTF_8).asScala
+        .filter(_.nonEmpty)
+        .flatMap(QueryWorkload.parse)
+        .toMap
+    else
+      Map.empty
+
+  def warmUp(transactional: Neo4jTransactional): Unit =
+    if (config.WarmUp.enabled && previous.nonEmpty) {
+
+      val clauses = previous.toVector.sortBy(-_._2).take(config.WarmUp.maxQueries).map(_._1)
+      val prepared = new AtomicInteger()
+      val failed = new AtomicInteger()
+      val start = System.nanoTime()
+      val threadCounter = new AtomicLong()
+
+      val threadFactory: ThreadFactory =
+        (runnable: Runnable) => {
+
+          val thread = new Thread(runnable, s"neo4j-warm-up-${threadCounter.incrementAndGet()}")
+
+          thread.setDaemon(true)
+          thread
+        }
+
+      val executor = Executors.newFixedThreadPool(config.WarmUp.parallelism, threadFactory)
+      val deadline = start + config.WarmUp.budget.toNanos
+
+      clauses.foreach {
+        clause =>
+
+          executor.execute(() => {
+
+            // statements that are not started before the deadline are skipped
+            if (System.nanoTime() < deadline)
+              try {
+
+                transactional.prepare(clause)
+                prepared.incrementAndGet()
+
+              } catch {
+
+                case NonFatal(e) =>
+
+                  failed.incrementAndGet()
+                  logger.debug(
+                    s"Cannot plan recorded statement during warm-up: ${DatabaseMetrics.fingerprint(clause)}", e)
+              }
+          })
+      }
+
+      executor.shutdown()
+
+      if (!executor.awaitTermination(config.WarmUp.budget.toNanos, TimeUnit.NANOSECONDS))
+        executor.shutdownNow()
+
+      loggerStats.info(
+        s"Planned ${prepared.get} of ${clauses.size} recorded statements in " +
+          s"${(System.nanoTime() - start) / 1000000} ms (${failed.get} failed).")
+    }
+
+  def record(): Unit =
+    if (config.WarmUp.enabled) {
+
+      val current = metrics.queryCounts.toMap
+      val counts = (previous.keySet ++ current.keySet).toVector
+        .map(x => x -> (previous.getOrElse(x, 0L) / 2 + current.getOrElse(x, 0L)))
+        .filter(_._2 > 0)
+        .sortBy(-_._2)
+        .take(config.WarmUp.maxRecorded)
+
+      val temporary = path.resolveSibling(s"${path.getFileName}.tmp")
+
+      Files.write(temporary, counts.map(x => QueryWorkload.format(x._1, x._2)).asJava, StandardCharsets.UTF_8)
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+}
+
+object QueryWorkload {
+
+  // a clause is stored on a single line; the exact text is kept, since plans are cached by the exact statement
+  def format(clause: String, count: Long): String =
+    s"$count\t${escape(clause)}"
+
+  def parse(line: String): Option[(String, Long)] = {
+
+    val separator = line.indexOf('\t')
+
+    if (separator < 0)
+      None
+    else
+      Try(line.substring(0, separator).toLong).toOption
+        .map(x => unescape(line.substring(separator + 1)) -> x)
+  }
+
+  private def escape(value: String): String =
+    value.flatMap {
+
+      case '\\' => "\\\\"
+      case '\n' => "\\n"
+      case '\r' => "\\r"
+      case '\t' => "\\t"
+      case x => x.toString
+    }
+
+  private def unescape(value: String): String = {
+
+    val builder = new StringBuilder(value.length)
+    var i = 0
+
+    while (i < value.length) {
+
+      if (value(i) == '\\' && i + 1 < value.length) {
+
+        builder.append(value(i + 1) match {
+
+          case 'n' => '\n'
+          case 'r' => '\r'
+          case 't' => '\t'
+          case x => x
+        })
+
+        i += 2
+
+      } else {
+
+        builder.append(value(i))
+        i += 1
+      }
+    }
+
+    builder.toString
+  }
+}
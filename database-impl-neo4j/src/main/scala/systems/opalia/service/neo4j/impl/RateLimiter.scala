@@ -0,0 +1,48 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent.TimeUnit
+
+
+// a token bucket holding at most one second of permits; a caller may run into debt and then waits until it is repaid
+final class RateLimiter(permitsPerSecond: Double) {
+
+  private var rate = math.max(1d, permitsPerSecond)
+  private var tokens = rate
+  private var last = System.nanoTime()
+
+  def currentRate: Double =
+    synchronized {
+
+      rate
+    }
+
+  def setRate(permitsPerSecond: Double): Unit =
+    synchronized {
+
+      refill()
+      rate = math.max(1d, permitsPerSecond)
+    }
+
+  def acquire(permits: Long): Unit = {
+
+    val wait =
+      synchronized {
+
+        refill()
+        tokens -= permits
+
+        if (tokens < 0) (-tokens / rate * 1000000000).toLong else 0L
+      }
+
+    if (wait > 0)
+      TimeUnit.NANOSECONDS.sleep(wait)
+  }
+
+  private def refill(): Unit = {
+
+    val now = System.nanoTime()
+
+    tokens = math.min(rate, tokens + (now - last).toDouble / 1000000000 * rate)
+    last = now
+  }
+}
@@ -0,0 +1,138 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+
+final class TransactionExecutor(config: BundleConfig)
+  extends Executor {
+
+  private val threadCounter = new AtomicLong()
+
+  private val threadFactory: ThreadFactory =
+    (runnable: Runnable) => {
+
+      val thread = new Thread(runnable, s"neo4j-transaction-${threadCounter.incrementAndGet()}")
+
+      thread.setDaemon(true)
+      thread
+    }
+
+  private val executor: ExecutorService =
+    if (config.Async.virtualThreads && TransactionExecutor.virtualThreadFactory.isDefined)
+      new VirtualThreadExecutor(TransactionExecutor.virtualThreadFactory.get)
+    else
+      new ThreadPoolExecutor(
+        config.Async.parallelism,
+        config.Async.parallelism,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue[Runnable](config.Async.queueSize),
+        threadFactory)
+
+  def execute(task: Runnable): Unit =
+    executor.execute(task)
+
+  def shutdown(): Unit = {
+
+    executor.shutdown()
+    executor.awaitTermination(Long.MaxValue, TimeUnit.MILLISECONDS)
+  }
+
+  // starts a virtual thread per task; the semaphore caps the number of tasks working on the database at once
+  private final class VirtualThreadExecutor(factory: ThreadFactory)
+    extends AbstractExecutorService {
+
+    private val permits = new Semaphore(config.Async.parallelism, true)
+    private val pending = new AtomicInteger()
+    private val terminated = new CountDownLatch(1)
+
+    @volatile
+    private var stopped = false
+
+    def execute(task: Runnable): Unit = {
+
+      if (stopped)
+        throw new RejectedExecutionException("The transaction executor is shut down.")
+
+      if (pending.incrementAndGet() > config.Async.parallelism + config.Async.queueSize) {
+
+        release()
+        throw new RejectedExecutionException("The queue of the transaction executor is full.")
+      }
+
+      try {
+
+        factory.newThread(() => {
+
+          permits.acquireUninterruptibly()
+
+          try {
+
+            task.run()
+
+          } finally {
+
+            permits.release()
+            release()
+          }
+
+        }).start()
+
+      } catch {
+
+        case e: Throwable =>
+
+          // a thread that was not started never releases its slot
+          release()
+          throw e
+      }
+    }
+
+    def shutdown(): Unit = {
+
+      stopped = true
+
+      if (pending.get == 0)
+        terminated.countDown()
+    }
+
+    def shutdownNow(): java.util.List[Runnable] = {
+
+      shutdown()
+      java.util.Collections.emptyList()
+    }
+
+    def isShutdown: Boolean =
+      stopped
+
+    def isTerminated: Boolean =
+      terminated.getCount == 0
+
+    def awaitTermination(timeout: Long, unit: TimeUnit): Boolean =
+      terminated.await(timeout, unit)
+
+    private def release(): Unit =
+      if (pending.decrementAndGet() == 0 && stopped)
+        terminated.countDown()
+  }
+
+}
+
+object TransactionExecutor {
+
+  // virtual threads are looked up reflectively to stay compatible with older JVMs
+  private lazy val virtualThreadFactory: Option[ThreadFactory] =
+    try {
+
+      val builder = classOf[Thread].getMethod("ofVirtual").invoke(null)
+      val factory = Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder)
+
+      Some(factory.asInstanceOf[ThreadFactory])
+
+    } catch {
+
+      case _: ReflectiveOperationException =>
+        None
+    }
+}
@@ -0,0 +1,56 @@
+package systems.opalia.service.neo4j.impl
+
+import java.util.concurrent.ThreadLocalRandom
+import systems.opalia.interfaces.logging.Logger
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabaseRetryPolicy, EmbeddedDatabaseRetryReason}
+
+
+final class TransactionRetryPolicy(config: BundleConfig,
+                                   metrics: DatabaseMetrics,
+                                   loggerStats: Logger)
+  extends EmbeddedDatabaseRetryPolicy {
+
+  private val base = config.txBackoff.toMillis
+  private val maximum = config.txBackoffMaximum.toMillis
+
+  def onFailure(reason: EmbeddedDatabaseRetryReason): Unit =
+    metrics.recordFailure(reason)
+
+  def isRetryable(reason: EmbeddedDatabaseRetryReason, throwable: Throwable): Boolean =
+    config.txRetryOn.contains(reason)
+
+  def getMaxRetries: Int =
+    config.txRetries
+
+  def getMaxRetryTime: Long =
+    config.txRetryBudget.map(_.toMillis).getOrElse(Long.MaxValue)
+
+  def getBackoff(retry: Int, previousBackoff: Long): Long =
+    config.txBackoffJitter match {
+
+      case BundleConfig.Jitter.None =>
+        exponential(retry)
+
+      case BundleConfig.Jitter.Full =>
+        ThreadLocalRandom.current.nextLong(exponential(retry) + 1)
+
+      case BundleConfig.Jitter.Decorrelated =>
+        // the delay grows randomly from the previous one instead of from the number of retries
+        math.min(maximum, ThreadLocalRandom.current.nextLong(base, math.max(base, previousBackoff) * 3 + 1))
+    }
+
+  def onFinished(retries: Int, committed: Boolean): Unit = {
+
+    metrics.recordFinished(retries, committed)
+
+    if (loggerStats.debugEnabled)
+      loggerStats.debug(
+        s"A transaction was ${if (committed) "committed" else "rolled back"} after $retries retries.")
+  }
+
+  private def exponential(retry: Int): Long =
+    if (retry > 62 || (base << (retry - 1)) >>> (retry - 1) != base)
+      maximum
+    else
+      math.min(maximum, base << (retry - 1))
+}
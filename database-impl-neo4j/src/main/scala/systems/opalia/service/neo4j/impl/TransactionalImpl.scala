@@ -1,31 +1,173 @@
 package systems.opalia.service.neo4j.impl
 
-import java.time.Instant
+import java.util.concurrent.CompletionException
+import java.util.concurrent.atomic.AtomicReference
+import java.util.function.BiConsumer
+import scala.concurrent.duration.FiniteDuration
+import scala.concurrent.{Future, Promise}
 import systems.opalia.interfaces.database._
 import systems.opalia.interfaces.logging.Logger
-import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabase
+import systems.opalia.service.neo4j.api.{Neo4jExecutor, Neo4jTransactional, PreparedStatement, TransactionRejectedException}
+import systems.opalia.service.neo4j.embedded.api._
 
 
 final class TransactionalImpl(database: EmbeddedDatabase,
+                              admission: AdmissionController,
+                              transactionExecutor: TransactionExecutor,
+                              metrics: DatabaseMetrics,
+                              cache: QueryCache,
                               logger: Logger,
-                              loggerStats: Logger)
-  extends Transactional {
+                              loggerStats: Logger,
+                              transactionTimeout: Option[FiniteDuration],
+                              statementTimeout: Option[FiniteDuration])
+  extends Neo4jTransactional {
 
-  def withTransaction[T](block: (Executor) => T): T = {
+  private val timeout = transactionTimeout.map(_.toMillis).getOrElse(0L)
 
-    val start = Instant.now.toEpochMilli
+  def withTransaction[T](block: (Executor) => T): T =
+    transaction(EmbeddedDatabaseIntent.READ_WRITE)(block)
 
-    val result =
-      database.withTransaction {
-        service =>
+  def withTransactionAsync[T](block: (Executor) => T): Future[T] =
+    transactionAsync(EmbeddedDatabaseIntent.READ_WRITE)(block)
 
-          block(new ConcreteExecutor(service))
+  def withReadOnlyTransaction[T](block: (Executor) => T): T =
+    transaction(EmbeddedDatabaseIntent.READ_ONLY)(block)
+
+  def withReadOnlyTransactionAsync[T](block: (Executor) => T): Future[T] =
+    transactionAsync(EmbeddedDatabaseIntent.READ_ONLY)(block)
+
+  def withTimeout(timeout: FiniteDuration): Neo4jTransactional =
+    new TransactionalImpl(
+      database, admission, transactionExecutor, metrics, cache, logger, loggerStats, Some(timeout), statementTimeout)
+
+  // EXPLAIN never writes, so the statement is prepared in a read-only transaction
+  def prepare(clause: String): PreparedStatement =
+    transaction(EmbeddedDatabaseIntent.READ_ONLY) {
+      executor =>
+
+        Neo4jExecutor(executor).prepare(clause)
+    }
+
+  private def transaction[T](intent: EmbeddedDatabaseIntent)(block: (Executor) => T): T = {
+
+    val start = System.nanoTime()
+    val executor = new AtomicReference[ConcreteExecutor]()
+
+    // a rejected transaction never begins, so it is not recorded as a transaction
+    val admitted = admission.acquire()
+
+    try {
+
+      val result =
+        database.withTransaction[T](
+          (service: EmbeddedDatabaseService) => block(newExecutor(service, executor)),
+          intent,
+          timeout)
+
+      committed(executor.get)
+
+      result
+
+    } finally {
+
+      admission.release(admitted)
+
+      val duration = System.nanoTime() - start
+
+      metrics.recordTransaction(duration)
+
+      if (loggerStats.debugEnabled)
+        loggerStats.debug(s"A transaction was performed in ${duration / 1000000} ms.")
+    }
+  }
+
+  private def transactionAsync[T](intent: EmbeddedDatabaseIntent)(block: (Executor) => T): Future[T] = {
+
+    val start = System.nanoTime()
+    val promise = Promise[T]()
+    val executor = new AtomicReference[ConcreteExecutor]()
+
+    // the caller waits for admission, so a full queue pushes back on the producer of asynchronous transactions
+    val admitted =
+      try {
+
+        admission.acquire()
+
+      } catch {
+
+        case e: TransactionRejectedException =>
+          return Future.failed(e)
+      }
+
+    database.withTransactionAsync[T](
+      (service: EmbeddedDatabaseService) => block(newExecutor(service, executor)),
+      intent,
+      timeout,
+      transactionExecutor
+    ).whenComplete(new BiConsumer[T, Throwable] {
+
+      def accept(result: T, throwable: Throwable): Unit = {
+
+        admission.release(admitted)
+
+        val duration = System.nanoTime() - start
+
+        metrics.recordTransaction(duration)
+
+        if (loggerStats.debugEnabled)
+          loggerStats.debug(s"An asynchronous transaction was performed in ${duration / 1000000} ms.")
+
+        if (throwable == null)
+          committed(executor.get)
+
+        throwable match {
+
+          case null => promise.success(result)
+          case e: CompletionException if e.getCause != null => promise.failure(e.getCause)
+          case e => promise.failure(e)
+        }
       }
+    })
+
+    promise.future
+  }
+
+  // each attempt of a transaction gets a new executor; only the one of the committed attempt counts
+  private def newExecutor(service: EmbeddedDatabaseService,
+                          executor: AtomicReference[ConcreteExecutor]): ConcreteExecutor = {
+
+    val timedService = statementTimeout.map(x => service.withStatementTimeout(x.toMillis)).getOrElse(service)
+    val created = new ConcreteExecutor(timedService, metrics, cache)
+
+    executor.set(created)
+    created
+  }
+
+  private def committed(executor: ConcreteExecutor): Unit =
+    if (executor != null && executor.containsUpdates)
+      cache.invalidate()
+
+  def withBatches(clause: String,
+                  records: Iterator[Map[String, Any]],
+                  batchSize: Int,
+                  batchesPerTransaction: Int): EmbeddedDatabaseQueryStatistics = {
+
+    if (batchSize < 1 || batchesPerTransaction < 1)
+      throw new IllegalArgumentException("Expect positive numbers for batch size and batches per transaction.")
+
+    val statistics = new QueryStatisticsAccumulator()
+
+    // the records of a transaction are buffered, so that a retried transaction sees the same records again
+    records.grouped(batchSize * batchesPerTransaction).foreach {
+      group =>
 
-    val end = Instant.now.toEpochMilli
+        statistics.add(withTransaction {
+          executor =>
 
-    loggerStats.debug(s"A transaction was performed in ${end - start} ms.")
+            Neo4jExecutor(executor).executeBatch(clause, group.iterator, batchSize)
+        })
+    }
 
-    result
+    statistics
   }
 }
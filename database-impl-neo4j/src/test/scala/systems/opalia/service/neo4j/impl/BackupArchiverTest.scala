@@ -0,0 +1,226 @@
+package systems.opalia.service.neo4j.impl
+
+import com.typesafe.config._
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, OutputStream}
+import java.nio.file.{Files, Path}
+import java.util.concurrent.ConcurrentHashMap
+import org.scalatest.BeforeAndAfterEach
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+import scala.collection.JavaConverters._
+import scala.util.Random
+import systems.opalia.commons.io.FileUtils
+import systems.opalia.interfaces.logging.Logger
+
+
+class BackupArchiverTest
+  extends AnyFlatSpec
+    with Matchers
+    with BeforeAndAfterEach {
+
+  private val chunkSize = 1024
+
+  private var directory: Path = _
+
+  override def beforeEach(): Unit =
+    directory = Files.createTempDirectory("neo4j-backup-archiver-test-")
+
+  override def afterEach(): Unit =
+    FileUtils.using(Files.walk(directory)) {
+      stream =>
+
+        stream.iterator.asScala.toVector.reverse.foreach(x => Files.delete(x))
+    }
+
+  it should "restore the files of an archive" in {
+
+    val backup = Files.createDirectories(directory.resolve("backup"))
+    val block = bytes(chunkSize, 1)
+
+    // the repeated block is uploaded only once
+    write(backup.resolve("neostore"), block ++ block ++ block ++ bytes(17, 2))
+    write(backup.resolve("schema/index/label.db"), "labels".getBytes("UTF-8"))
+    write(backup.resolve("empty.db"), Array.emptyByteArray)
+
+    val store = new MemoryStore()
+
+    archive(store, backup)
+
+    store.objects.size should be(4)
+
+    val target = directory.resolve("restored")
+
+    restore(store, target)
+
+    Seq("neostore", "schema/index/label.db", "empty.db").foreach {
+      name =>
+
+        Files.readAllBytes(target.resolve(name)) shouldBe Files.readAllBytes(backup.resolve(name))
+    }
+  }
+
+  it should "upload only changed chunks in a later archive" in {
+
+    val backup = Files.createDirectories(directory.resolve("backup"))
+
+    write(backup.resolve("neostore"), bytes(chunkSize * 2, 1))
+    write(backup.resolve("counts.db"), bytes(100, 2))
+
+    val store = new MemoryStore()
+
+    archive(store, backup)
+
+    store.objects.size should be(4)
+
+    write(backup.resolve("counts.db"), bytes(120, 3))
+
+    // a new archiver reads the indexes of the previous one
+    archive(store, backup)
+
+    // one changed chunk and a second manifest
+    store.objects.size should be(6)
+
+    val target = directory.resolve("restored")
+
+    restore(store, target)
+
+    Files.readAllBytes(target.resolve("counts.db")) shouldBe bytes(120, 3)
+    Files.readAllBytes(target.resolve("neostore")) shouldBe bytes(chunkSize * 2, 1)
+  }
+
+  it should "upload chunks again that were removed from the file system" in {
+
+    val backup = Files.createDirectories(directory.resolve("backup"))
+
+    write(backup.resolve("neostore"), bytes(chunkSize * 2, 1))
+
+    val store = new MemoryStore()
+
+    archive(store, backup)
+
+    // the file system is pruned without the local index knowing about it
+    store.objects.clear()
+
+    archive(store, backup)
+
+    store.objects.size should be(3)
+
+    val target = directory.resolve("restored")
+
+    restore(store, target)
+
+    Files.readAllBytes(target.resolve("neostore")) shouldBe bytes(chunkSize * 2, 1)
+  }
+
+  it should "reject corrupted chunks" in {
+
+    val backup = Files.createDirectories(directory.resolve("backup"))
+
+    write(backup.resolve("neostore"), bytes(100, 1))
+
+    val store = new MemoryStore()
+
+    archive(store, backup)
+
+    // a valid deflate stream with other content
+    val corrupted = new ByteArrayOutputStream()
+
+    FileUtils.using(new java.util.zip.DeflaterOutputStream(corrupted))(_.write(bytes(100, 2)))
+
+    an[IllegalStateException] should be thrownBy
+      BackupArchiver.restore(
+        new ByteArrayInputStream(store.manifest),
+        _ => new ByteArrayInputStream(corrupted.toByteArray),
+        directory.resolve("restored"))
+  }
+
+  // keeps the committed objects in memory
+  private class MemoryStore
+    extends BackupArchiver.Store {
+
+    val objects = new ConcurrentHashMap[String, (String, Array[Byte])]()
+
+    // the content of the latest manifest
+    @volatile var manifest: Array[Byte] = _
+
+    private val created = new ConcurrentHashMap[String, (String, ByteArrayOutputStream)]()
+
+    def exists(id: Array[Byte]): Boolean =
+      objects.containsKey(key(id))
+
+    def create(id: Array[Byte], name: String, mimeType: String): OutputStream = {
+
+      val outputStream = new ByteArrayOutputStream()
+
+      created.put(key(id), (name, outputStream))
+      outputStream
+    }
+
+    def commit(id: Array[Byte]): Unit = {
+
+      val (name, outputStream) = created.remove(key(id))
+
+      objects.put(key(id), (name, outputStream.toByteArray))
+
+      if (name.endsWith(".manifest"))
+        manifest = outputStream.toByteArray
+    }
+
+    def get(id: Array[Byte]): Array[Byte] =
+      objects.get(key(id))._2
+
+    private def key(id: Array[Byte]): String =
+      id.map(x => f"${x & 0xff}%02x").mkString
+  }
+
+  private def restore(store: MemoryStore, target: Path): Unit =
+    BackupArchiver.restore(
+      new ByteArrayInputStream(store.manifest),
+      id => new ByteArrayInputStream(store.get(id)),
+      target)
+
+  private def archive(store: BackupArchiver.Store, backup: Path): Unit = {
+
+    val config =
+      new BundleConfig(ConfigFactory.parseString(
+        s"""
+           |database {
+           |  deployment-path = "$directory"
+           |  graph-path = "$directory/graph"
+           |  tx-retries = 0
+           |  tx-backoff = 10 milliseconds
+           |  backup.chunk-size = $chunkSize
+           |  backup.compression-threads = 2
+           |}
+        """.stripMargin))
+
+    val logger =
+      java.lang.reflect.Proxy.newProxyInstance(getClass.getClassLoader, Array(classOf[Logger]),
+        (_: AnyRef, _: java.lang.reflect.Method, _: Array[AnyRef]) => null).asInstanceOf[Logger]
+
+    val archiver = new BackupArchiver(config, store, new DatabaseMetrics(config), logger)
+
+    try {
+
+      archiver.archive(backup)
+
+    } finally {
+
+      archiver.shutdown()
+    }
+  }
+
+  private def bytes(length: Int, seed: Long): Array[Byte] = {
+
+    val result = new Array[Byte](length)
+
+    new Random(seed).nextBytes(result)
+    result
+  }
+
+  private def write(path: Path, content: Array[Byte]): Unit = {
+
+    Files.createDirectories(path.getParent)
+    Files.write(path, content)
+  }
+}
@@ -0,0 +1,157 @@
+package systems.opalia.service.neo4j.impl
+
+import com.typesafe.config._
+import java.lang.reflect.{InvocationHandler, Method, Proxy}
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CancellationException, CountDownLatch, TimeUnit}
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+import scala.concurrent.Await
+import scala.concurrent.duration._
+import scala.reflect._
+import systems.opalia.interfaces.logging.Logger
+import systems.opalia.interfaces.vfs.VfsService
+import systems.opalia.service.neo4j.embedded.api.{EmbeddedDatabaseBackup, EmbeddedDatabaseFactory}
+
+
+class BackupManagerTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  it should "hand out the running job instead of starting another backup" in {
+
+    val online = new OnlineBackup()
+    val manager = newManager(enabled = true, online)
+
+    try {
+
+      val job = manager.submitBackup()
+
+      online.started.await(5, TimeUnit.SECONDS) shouldBe true
+
+      manager.submitBackup() shouldBe theSameInstanceAs(job)
+      manager.submitBackup() shouldBe theSameInstanceAs(job)
+
+      online.release.countDown()
+
+      // the archive step fails without a file system, but the job is done either way
+      Await.ready(job.future, 5 seconds)
+
+      job.isDone shouldBe true
+      online.count.get should be(1)
+
+      // a finished job is not handed out again
+      manager.submitBackup() should not be theSameInstanceAs(job)
+
+    } finally {
+
+      manager.shutdown()
+    }
+  }
+
+  it should "cancel a running job" in {
+
+    val online = new OnlineBackup()
+    val manager = newManager(enabled = true, online)
+
+    try {
+
+      val job = manager.submitBackup()
+
+      online.started.await(5, TimeUnit.SECONDS) shouldBe true
+
+      job.cancel() shouldBe true
+
+      a[CancellationException] should be thrownBy Await.result(job.future, 5 seconds)
+
+      job.isDone shouldBe true
+      job.cancel() shouldBe false
+      online.count.get should be(1)
+
+    } finally {
+
+      manager.shutdown()
+    }
+  }
+
+  it should "reject backups if they are disabled" in {
+
+    val manager = newManager(enabled = false, new OnlineBackup())
+
+    try {
+
+      an[IllegalStateException] should be thrownBy manager.submitBackup()
+      an[IllegalStateException] should be thrownBy manager.backup()
+
+    } finally {
+
+      manager.shutdown()
+    }
+  }
+
+  // the online backup blocks until it is released or interrupted
+  private class OnlineBackup
+    extends EmbeddedDatabaseBackup {
+
+    val count = new AtomicInteger()
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+
+    def backup(): Unit = {
+
+      count.incrementAndGet()
+      started.countDown()
+      release.await()
+    }
+  }
+
+  private def newManager(enabled: Boolean, online: OnlineBackup): BackupManager = {
+
+    val config =
+      new BundleConfig(ConfigFactory.parseString(
+        s"""
+           |database {
+           |  deployment-path = "./tmp/backup-manager-test"
+           |  graph-path = "./tmp/backup-manager-test/graph"
+           |  backup-path = "./tmp/backup-manager-test/backup"
+           |  tx-retries = 0
+           |  tx-backoff = 10 milliseconds
+           |  backup.enabled = $enabled
+           |  backup.server = "127.0.0.1:7071"
+           |  backup.shutdown-timeout = 5 seconds
+           |}
+        """.stripMargin))
+
+    val factory =
+      stub[EmbeddedDatabaseFactory] {
+
+        case "newEmbeddedDatabaseBackup" => online
+      }
+
+    // the file system is only used by the archive step, which fails without one
+    val vfsService =
+      stub[VfsService] {
+
+        case "getFileSystem" => null
+      }
+
+    val logger = stub[Logger](PartialFunction.empty)
+
+    new BackupManager(config, factory, logger, logger, vfsService, new DatabaseMetrics(config))
+  }
+
+  // answers the given methods; all others return the default value of their result type
+  private def stub[T: ClassTag](answer: PartialFunction[String, AnyRef]): T =
+    Proxy.newProxyInstance(getClass.getClassLoader, Array(classTag[T].runtimeClass), new InvocationHandler {
+
+      def invoke(proxy: AnyRef, method: Method, args: Array[AnyRef]): AnyRef =
+        answer.applyOrElse(method.getName, (_: String) => method.getReturnType match {
+
+          case java.lang.Boolean.TYPE => Boolean.box(false)
+          case java.lang.Integer.TYPE => Int.box(0)
+          case java.lang.Long.TYPE => Long.box(0L)
+          case _ => null
+        })
+
+    }).asInstanceOf[T]
+}
@@ -0,0 +1,133 @@
+package systems.opalia.service.neo4j.impl
+
+import com.typesafe.config._
+import org.scalatest.flatspec._
+import org.scalatest.matchers.should._
+import scala.collection.JavaConverters._
+import systems.opalia.service.neo4j.embedded.api._
+
+
+class QueryCacheTest
+  extends AnyFlatSpec
+    with Matchers {
+
+  it should "cache small read-only results" in {
+
+    val cache = newCache(maxBytes = 1024 * 1024)
+    val key = QueryCache.Key("RETURN 1", Map.empty)
+    val table = new Table(Seq("a", "b"), spilled = false)
+
+    cache.put(key, table, cache.generation)
+
+    cache.get(key) shouldBe Some(table)
+
+    cache.invalidate()
+
+    cache.get(key) shouldBe None
+  }
+
+  it should "not cache results larger than the byte budget of a segment" in {
+
+    val cache = newCache(maxBytes = 16 * 1024)
+    val key = QueryCache.Key("RETURN $x", Map("x" -> 1))
+    val table = new Table(Seq("x" * 2048), spilled = false)
+
+    QueryCache.estimate(table) should be > 1024L
+
+    cache.put(key, table, cache.generation)
+
+    cache.get(key) shouldBe None
+  }
+
+  it should "never cache spilled results" in {
+
+    val cache = newCache(maxBytes = 1024 * 1024)
+    val key = QueryCache.Key("RETURN 1", Map.empty)
+
+    cache.put(key, new Table(Seq("a"), spilled = true), cache.generation)
+
+    cache.get(key) shouldBe None
+  }
+
+  it should "estimate nested values" in {
+
+    val small = new Table(Seq("a"), spilled = false)
+    val large = new Table(Seq(java.util.Arrays.asList("a", java.util.Collections.singletonMap("k", "v" * 100))), false)
+
+    QueryCache.estimate(large) should be > QueryCache.estimate(small) + 200
+  }
+
+  // a single column with one row per value
+  private class Table(values: Seq[AnyRef], spilled: Boolean)
+    extends EmbeddedDatabaseQueryTable {
+
+    private val header =
+      new EmbeddedDatabaseQueryHeader {
+
+        def size: Int =
+          1
+
+        def getColumn(index: Int): String =
+          "x"
+
+        def getColumns: java.util.List[String] =
+          java.util.Collections.singletonList("x")
+      }
+
+    private val rows =
+      values.map {
+        value =>
+
+          new EmbeddedDatabaseQueryRow {
+
+            def getHeader: EmbeddedDatabaseQueryHeader =
+              header
+
+            def getValue(index: Int): AnyRef =
+              value
+
+            def getData: java.util.Map[String, AnyRef] =
+              java.util.Collections.singletonMap("x", value)
+          }: EmbeddedDatabaseQueryRow
+      }
+
+    def getStatistics: EmbeddedDatabaseQueryStatistics =
+      null
+
+    def getHeader: EmbeddedDatabaseQueryHeader =
+      header
+
+    def getColumns: java.util.List[String] =
+      header.getColumns
+
+    def getRows: java.util.List[EmbeddedDatabaseQueryRow] =
+      rows.asJava
+
+    def isReadOnly: Boolean =
+      true
+
+    def isSpilled: Boolean =
+      spilled
+
+    def close(): Unit = {
+    }
+  }
+
+  private def newCache(maxBytes: Long): QueryCache = {
+
+    val config =
+      new BundleConfig(ConfigFactory.parseString(
+        s"""
+           |database {
+           |  deployment-path = "./tmp/query-cache-test"
+           |  graph-path = "./tmp/query-cache-test/graph"
+           |  tx-retries = 0
+           |  tx-backoff = 10 milliseconds
+           |  query-cache.enabled = true
+           |  query-cache.max-bytes = $maxBytes
+           |}
+        """.stripMargin))
+
+    new QueryCache(config, new DatabaseMetrics(config))
+  }
+}
@@ -1,5 +1,7 @@
 package systems.opalia.service.neo4j.embedded.api;
 
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 
@@ -10,4 +12,23 @@ public interface EmbeddedDatabase {
     void shutdown();
 
     <T> T withTransaction(Function<EmbeddedDatabaseService, T> block) throws Throwable;
+
+    <T> T withTransaction(Function<EmbeddedDatabaseService, T> block, EmbeddedDatabaseIntent intent) throws Throwable;
+
+    // Terminates each attempt of the transaction that runs longer than the timeout in milliseconds; the database
+    // default of "dbms.transaction.timeout" applies to a timeout of zero.
+    <T> T withTransaction(Function<EmbeddedDatabaseService, T> block, EmbeddedDatabaseIntent intent, long timeout)
+            throws Throwable;
+
+    // Runs each attempt of the transaction on the executor; the backoff between retries does not block a thread.
+    <T> CompletionStage<T> withTransactionAsync(Function<EmbeddedDatabaseService, T> block, Executor executor);
+
+    <T> CompletionStage<T> withTransactionAsync(Function<EmbeddedDatabaseService, T> block,
+                                                EmbeddedDatabaseIntent intent,
+                                                Executor executor);
+
+    <T> CompletionStage<T> withTransactionAsync(Function<EmbeddedDatabaseService, T> block,
+                                                EmbeddedDatabaseIntent intent,
+                                                long timeout,
+                                                Executor executor);
 }
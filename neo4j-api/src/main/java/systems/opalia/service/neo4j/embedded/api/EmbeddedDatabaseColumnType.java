@@ -0,0 +1,17 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+
+public enum EmbeddedDatabaseColumnType {
+
+    // The column holds integer numbers in a long array.
+    LONG,
+
+    // The column holds floating point numbers in a double array.
+    DOUBLE,
+
+    // The column holds truth values in a boolean array.
+    BOOLEAN,
+
+    // The column holds mixed or other values as objects; a column with only null values is of this type as well.
+    OBJECT
+}
@@ -0,0 +1,25 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+
+// A node or relationship of a result; the map holds its properties.
+public interface EmbeddedDatabaseEntity
+        extends Map<String, Object> {
+
+    // Returns the internal id; the id of a deleted entity can be reused by the database.
+    long getId();
+
+    boolean isNode();
+
+    // Returns the labels of a node or an empty list for a relationship.
+    List<String> getLabels();
+
+    // Returns the type of a relationship or null for a node.
+    String getType();
+
+    // Copies the given properties into an entity that stays readable after the transaction is closed.
+    EmbeddedDatabaseEntity project(Collection<String> keys);
+}
@@ -5,12 +5,7 @@ import java.nio.file.Path;
 
 public interface EmbeddedDatabaseFactory {
 
-    EmbeddedDatabase newEmbeddedDatabase(Path configFile,
-                                         Path storeDirectory,
-                                         EmbeddedDatabaseLoggingProvider loggingProvider,
-                                         boolean dbHighlyAvailable,
-                                         int txRetries,
-                                         long txBackoff);
+    EmbeddedDatabase newEmbeddedDatabase(EmbeddedDatabaseSettings settings);
 
     EmbeddedDatabaseBackup newEmbeddedDatabaseBackup(Path storeDirectory, String hostname, int port);
 }
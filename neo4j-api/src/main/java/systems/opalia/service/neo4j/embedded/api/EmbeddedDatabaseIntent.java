@@ -0,0 +1,10 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+
+public enum EmbeddedDatabaseIntent {
+
+    // The transaction is not allowed to write, so it can be served by a slave.
+    READ_ONLY,
+
+    READ_WRITE
+}
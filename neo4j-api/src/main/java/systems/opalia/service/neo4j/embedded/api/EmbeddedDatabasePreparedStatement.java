@@ -0,0 +1,14 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+import java.util.List;
+
+
+public interface EmbeddedDatabasePreparedStatement {
+
+    String getClause();
+
+    // Returns the names of the parameters in the order of their first occurrence in the clause.
+    List<String> getParameterNames();
+
+    boolean isReadOnly();
+}
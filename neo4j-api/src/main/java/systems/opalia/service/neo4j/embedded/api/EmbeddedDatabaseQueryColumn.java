@@ -0,0 +1,25 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+
+public interface EmbeddedDatabaseQueryColumn {
+
+    String getName();
+
+    EmbeddedDatabaseColumnType getType();
+
+    int size();
+
+    boolean isNull(int row);
+
+    // Returns 0 for a null value; it fails if the column is not of type LONG.
+    long getLong(int row);
+
+    // Returns 0 for a null value; it fails if the column is neither of type DOUBLE nor LONG.
+    double getDouble(int row);
+
+    // Returns false for a null value; it fails if the column is not of type BOOLEAN.
+    boolean getBoolean(int row);
+
+    // Returns the value of any column type; primitive values are boxed.
+    Object getObject(int row);
+}
@@ -0,0 +1,20 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+import java.util.List;
+
+
+public interface EmbeddedDatabaseQueryColumnTable {
+
+    EmbeddedDatabaseQueryStatistics getStatistics();
+
+    EmbeddedDatabaseQueryHeader getHeader();
+
+    List<String> getColumns();
+
+    int size();
+
+    EmbeddedDatabaseQueryColumn getColumn(int index);
+
+    // Creates boxed rows from the columns; this is only done on the first call.
+    List<EmbeddedDatabaseQueryRow> getRows();
+}
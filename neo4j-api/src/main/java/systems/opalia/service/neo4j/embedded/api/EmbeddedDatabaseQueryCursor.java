@@ -0,0 +1,19 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+import java.util.Iterator;
+import java.util.List;
+
+
+public interface EmbeddedDatabaseQueryCursor
+        extends Iterator<EmbeddedDatabaseQueryRow>, AutoCloseable {
+
+    // Returns the statistics of the query; these are only complete after the cursor is exhausted.
+    EmbeddedDatabaseQueryStatistics getStatistics();
+
+    EmbeddedDatabaseQueryHeader getHeader();
+
+    List<String> getColumns();
+
+    // Releases the underlying result; the cursor must be closed before the transaction ends.
+    void close();
+}
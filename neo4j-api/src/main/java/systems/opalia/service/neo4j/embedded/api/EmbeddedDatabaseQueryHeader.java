@@ -0,0 +1,14 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+import java.util.List;
+
+
+public interface EmbeddedDatabaseQueryHeader {
+
+    // Returns the number of columns; all rows sharing this header have the same size.
+    int size();
+
+    String getColumn(int index);
+
+    List<String> getColumns();
+}
@@ -5,5 +5,11 @@ import java.util.Map;
 
 public interface EmbeddedDatabaseQueryRow {
 
+    EmbeddedDatabaseQueryHeader getHeader();
+
+    // Returns the normalized value of a column; nested lists and maps are immutable.
+    Object getValue(int index);
+
+    // Returns an immutable view on the row without copying the values.
     Map<String, Object> getData();
 }
@@ -7,7 +7,19 @@ public interface EmbeddedDatabaseQueryTable {
 
     EmbeddedDatabaseQueryStatistics getStatistics();
 
+    EmbeddedDatabaseQueryHeader getHeader();
+
     List<String> getColumns();
 
     List<EmbeddedDatabaseQueryRow> getRows();
+
+    // Returns true if the statement was planned as a read-only query.
+    boolean isReadOnly();
+
+    // Returns true if the rows were spilled to disk and are only mapped into memory.
+    boolean isSpilled();
+
+    // Releases the memory of rows that were spilled to disk right away instead of once the table is unreachable; the
+    // rows must not be read afterwards. It has no effect on rows held on the heap.
+    void close();
 }
@@ -0,0 +1,23 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+
+public interface EmbeddedDatabaseRetryPolicy {
+
+    // Is called for each failed attempt of a transaction with a known reason, even if it is not retried.
+    void onFailure(EmbeddedDatabaseRetryReason reason);
+
+    // Returns true if a transaction that failed for the specified reason should be retried.
+    boolean isRetryable(EmbeddedDatabaseRetryReason reason, Throwable throwable);
+
+    // Returns the maximum number of retries of a single transaction.
+    int getMaxRetries();
+
+    // Returns the maximum time in milliseconds that can be spent on retries of a single transaction.
+    long getMaxRetryTime();
+
+    // Returns the delay in milliseconds before the specified retry (beginning at 1).
+    long getBackoff(int retry, long previousBackoff);
+
+    // Is called once per transaction with the number of retries performed.
+    void onFinished(int retries, boolean committed);
+}
@@ -0,0 +1,14 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+
+public enum EmbeddedDatabaseRetryReason {
+
+    // The transaction was chosen as victim of a detected deadlock.
+    DEADLOCK,
+
+    // The transaction was terminated by the database, for example on a failover of the master.
+    TERMINATED,
+
+    // The transaction or one of its statements exceeded its timeout and was terminated.
+    TIMEOUT
+}
@@ -6,4 +6,19 @@ import java.util.Map;
 public interface EmbeddedDatabaseService {
 
     EmbeddedDatabaseQueryTable execute(String clause, Map<String, Object> parameters);
+
+    EmbeddedDatabaseQueryCursor stream(String clause, Map<String, Object> parameters);
+
+    // Executes the query and stores numbers and truth values of each column in primitive arrays.
+    EmbeddedDatabaseQueryColumnTable executeColumnar(String clause, Map<String, Object> parameters);
+
+    // Executes the query and discards its rows; only the statistics are returned.
+    EmbeddedDatabaseQueryStatistics executeUpdate(String clause, Map<String, Object> parameters);
+
+    // Returns a view that terminates the transaction if one of its statements runs longer than the timeout in
+    // milliseconds; a streamed statement runs until its cursor is closed. A timeout of zero disables the limit.
+    EmbeddedDatabaseService withStatementTimeout(long timeout);
+
+    // Plans the clause with EXPLAIN, so that the plan is cached, and extracts the names of its parameters.
+    EmbeddedDatabasePreparedStatement prepare(String clause);
 }
@@ -0,0 +1,161 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+
+// The settings of an embedded database; the optional values default to a single instance without slow query log,
+// lazy entities or spilling.
+public final class EmbeddedDatabaseSettings {
+
+    private final Path configFile;
+    private final Path storeDirectory;
+    private final EmbeddedDatabaseLoggingProvider loggingProvider;
+    private final EmbeddedDatabaseRetryPolicy retryPolicy;
+
+    private boolean highlyAvailable = false;
+    private long slowQueryThreshold = -1;
+    private boolean slowQueryProfile = false;
+    private int logBufferSize = 8192;
+    private boolean logBufferBlocking = true;
+    private boolean lazyEntities = false;
+    private Path spillDirectory = null;
+    private int spillThreshold = 0;
+    private long spillMaxBytes = Long.MAX_VALUE;
+
+    public EmbeddedDatabaseSettings(Path configFile,
+                                    Path storeDirectory,
+                                    EmbeddedDatabaseLoggingProvider loggingProvider,
+                                    EmbeddedDatabaseRetryPolicy retryPolicy) {
+
+        this.configFile = Objects.requireNonNull(configFile);
+        this.storeDirectory = Objects.requireNonNull(storeDirectory);
+        this.loggingProvider = Objects.requireNonNull(loggingProvider);
+        this.retryPolicy = Objects.requireNonNull(retryPolicy);
+    }
+
+    public Path getConfigFile() {
+
+        return configFile;
+    }
+
+    public Path getStoreDirectory() {
+
+        return storeDirectory;
+    }
+
+    public EmbeddedDatabaseLoggingProvider getLoggingProvider() {
+
+        return loggingProvider;
+    }
+
+    public EmbeddedDatabaseRetryPolicy getRetryPolicy() {
+
+        return retryPolicy;
+    }
+
+    public boolean isHighlyAvailable() {
+
+        return highlyAvailable;
+    }
+
+    public EmbeddedDatabaseSettings setHighlyAvailable(boolean highlyAvailable) {
+
+        this.highlyAvailable = highlyAvailable;
+        return this;
+    }
+
+    public long getSlowQueryThreshold() {
+
+        return slowQueryThreshold;
+    }
+
+    // Statements that run at least this many milliseconds are logged; a negative value disables the log.
+    public EmbeddedDatabaseSettings setSlowQueryThreshold(long slowQueryThreshold) {
+
+        this.slowQueryThreshold = slowQueryThreshold;
+        return this;
+    }
+
+    public boolean isSlowQueryProfile() {
+
+        return slowQueryProfile;
+    }
+
+    // Logs the profile of a slow statement instead of its plan.
+    public EmbeddedDatabaseSettings setSlowQueryProfile(boolean slowQueryProfile) {
+
+        this.slowQueryProfile = slowQueryProfile;
+        return this;
+    }
+
+    public int getLogBufferSize() {
+
+        return logBufferSize;
+    }
+
+    // The Neo4j logs are handed to a background thread through a ring buffer of this size; zero logs synchronously.
+    public EmbeddedDatabaseSettings setLogBufferSize(int logBufferSize) {
+
+        if (logBufferSize < 0)
+            throw new IllegalArgumentException("Expect non-negative number for log buffer size.");
+
+        this.logBufferSize = logBufferSize;
+        return this;
+    }
+
+    public boolean isLogBufferBlocking() {
+
+        return logBufferBlocking;
+    }
+
+    // Blocks the logging thread on a full buffer instead of dropping the message.
+    public EmbeddedDatabaseSettings setLogBufferBlocking(boolean logBufferBlocking) {
+
+        this.logBufferBlocking = logBufferBlocking;
+        return this;
+    }
+
+    public boolean isLazyEntities() {
+
+        return lazyEntities;
+    }
+
+    // Reads the properties of nodes and relationships only on access; such entities must not leave the transaction.
+    public EmbeddedDatabaseSettings setLazyEntities(boolean lazyEntities) {
+
+        this.lazyEntities = lazyEntities;
+        return this;
+    }
+
+    public Path getSpillDirectory() {
+
+        return spillDirectory;
+    }
+
+    public int getSpillThreshold() {
+
+        return spillThreshold;
+    }
+
+    public long getSpillMaxBytes() {
+
+        return spillMaxBytes;
+    }
+
+    // Results with more rows than the threshold are written to files in the directory, while all spilled results
+    // together are limited to the given number of bytes; a threshold of zero disables spilling.
+    public EmbeddedDatabaseSettings setSpill(Path spillDirectory, int spillThreshold, long spillMaxBytes) {
+
+        if (spillThreshold < 0)
+            throw new IllegalArgumentException("Expect non-negative number for spill threshold.");
+
+        if (spillMaxBytes <= 0)
+            throw new IllegalArgumentException("Expect positive number for spill size limit.");
+
+        this.spillDirectory = Objects.requireNonNull(spillDirectory);
+        this.spillThreshold = spillThreshold;
+        this.spillMaxBytes = spillMaxBytes;
+        return this;
+    }
+}
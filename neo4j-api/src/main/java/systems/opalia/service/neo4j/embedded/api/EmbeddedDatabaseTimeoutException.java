@@ -0,0 +1,12 @@
+package systems.opalia.service.neo4j.embedded.api;
+
+
+// Thrown if a transaction was terminated because one of its statements exceeded its timeout.
+public final class EmbeddedDatabaseTimeoutException
+        extends RuntimeException {
+
+    public EmbeddedDatabaseTimeoutException(String message, Throwable cause) {
+
+        super(message, cause);
+    }
+}
@@ -0,0 +1,171 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.*;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseEntity;
+
+
+// A lazy entity reads a single property on lookup and all properties on the first iteration, so it must not be
+// used after its transaction is closed. An eager entity copies all properties when it is created.
+public final class EmbeddedDatabaseEntityImpl
+        extends AbstractMap<String, Object>
+        implements EmbeddedDatabaseEntity {
+
+    private final long id;
+    private final boolean node;
+    private final List<String> labels;
+    private final String type;
+
+    private PropertyContainer container;
+    private Map<String, Object> properties;
+
+    // the values of single lookups on a lazy entity, so that a repeated lookup does not read the store again
+    private Map<String, Object> cache;
+
+    private EmbeddedDatabaseEntityImpl(long id,
+                                       boolean node,
+                                       List<String> labels,
+                                       String type,
+                                       PropertyContainer container,
+                                       Map<String, Object> properties) {
+
+        this.id = id;
+        this.node = node;
+        this.labels = labels;
+        this.type = type;
+        this.container = container;
+        this.properties = properties;
+    }
+
+    static EmbeddedDatabaseEntityImpl from(PropertyContainer container, boolean lazy) {
+
+        EmbeddedDatabaseEntityImpl entity;
+
+        if (container instanceof Node) {
+
+            Node node = (Node) container;
+            List<String> labels = new ArrayList<>();
+
+            for (Label label : node.getLabels())
+                labels.add(label.name());
+
+            entity = new EmbeddedDatabaseEntityImpl(
+                    node.getId(), true, Collections.unmodifiableList(labels), null, container, null);
+
+        } else {
+
+            Relationship relationship = (Relationship) container;
+
+            entity = new EmbeddedDatabaseEntityImpl(
+                    relationship.getId(),
+                    false,
+                    Collections.emptyList(),
+                    relationship.getType().name(),
+                    container,
+                    null);
+        }
+
+        if (!lazy)
+            entity.load();
+
+        return entity;
+    }
+
+    static EmbeddedDatabaseEntityImpl detached(long id,
+                                               boolean node,
+                                               List<String> labels,
+                                               String type,
+                                               Map<String, Object> properties) {
+
+        return new EmbeddedDatabaseEntityImpl(id, node, labels, type, null, properties);
+    }
+
+    public long getId() {
+
+        return id;
+    }
+
+    public boolean isNode() {
+
+        return node;
+    }
+
+    public List<String> getLabels() {
+
+        return labels;
+    }
+
+    public String getType() {
+
+        return type;
+    }
+
+    public Object get(Object key) {
+
+        if (properties != null)
+            return properties.get(key);
+
+        if (!(key instanceof String))
+            return null;
+
+        if (cache == null)
+            cache = new HashMap<>();
+        else if (cache.containsKey(key))
+            return cache.get(key);
+
+        // a single lookup reads only this property from the store
+        Object value = EmbeddedDatabaseQueryRowImpl.normalize(container.getProperty((String) key, null), false);
+
+        cache.put((String) key, value);
+
+        return value;
+    }
+
+    public boolean containsKey(Object key) {
+
+        if (properties != null)
+            return properties.containsKey(key);
+
+        return key instanceof String && container.hasProperty((String) key);
+    }
+
+    public Set<Entry<String, Object>> entrySet() {
+
+        return load().entrySet();
+    }
+
+    public EmbeddedDatabaseEntity project(Collection<String> keys) {
+
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        for (String key : keys) {
+
+            Object value = get(key);
+
+            if (value != null)
+                result.put(key, value);
+        }
+
+        return detached(id, node, labels, type, Collections.unmodifiableMap(result));
+    }
+
+    private Map<String, Object> load() {
+
+        if (properties == null) {
+
+            Map<String, Object> result = new LinkedHashMap<>();
+
+            for (Map.Entry<String, Object> entry : container.getAllProperties().entrySet())
+                result.put(entry.getKey(), EmbeddedDatabaseQueryRowImpl.normalize(entry.getValue(), false));
+
+            properties = Collections.unmodifiableMap(result);
+            container = null;
+            cache = null;
+        }
+
+        return properties;
+    }
+}
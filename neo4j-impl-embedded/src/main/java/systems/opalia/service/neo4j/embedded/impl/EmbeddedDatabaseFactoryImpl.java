@@ -5,27 +5,16 @@ import org.osgi.service.component.annotations.Component;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabase;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseBackup;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseFactory;
-import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseLoggingProvider;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseSettings;
 
 
 @Component(service = EmbeddedDatabaseFactory.class)
 public final class EmbeddedDatabaseFactoryImpl
         implements EmbeddedDatabaseFactory {
 
-    public EmbeddedDatabase newEmbeddedDatabase(Path configFile,
-                                                Path storeDirectory,
-                                                EmbeddedDatabaseLoggingProvider loggingProvider,
-                                                boolean dbHighlyAvailable,
-                                                int txRetries,
-                                                long txBackoff) {
+    public EmbeddedDatabase newEmbeddedDatabase(EmbeddedDatabaseSettings settings) {
 
-        return new EmbeddedDatabaseImpl(
-                configFile,
-                storeDirectory,
-                loggingProvider,
-                dbHighlyAvailable,
-                txRetries,
-                txBackoff);
+        return new EmbeddedDatabaseImpl(settings);
     }
 
     public EmbeddedDatabaseBackup newEmbeddedDatabaseBackup(Path storeDirectory, String hostname, int port) {
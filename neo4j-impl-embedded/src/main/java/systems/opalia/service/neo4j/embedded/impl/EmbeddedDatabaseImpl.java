@@ -1,51 +1,114 @@
 package systems.opalia.service.neo4j.embedded.impl;
 
-import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.*;
 import java.util.function.Function;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionException;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.TransactionTerminatedException;
 import org.neo4j.graphdb.factory.GraphDatabaseBuilder;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
 import org.neo4j.graphdb.factory.HighlyAvailableGraphDatabaseFactory;
 import org.neo4j.kernel.DeadlockDetectedException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.exceptions.Status;
+import org.neo4j.kernel.api.security.AccessMode;
+import org.neo4j.kernel.api.security.SecurityContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabase;
-import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseLoggingProvider;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseIntent;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseRetryPolicy;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseRetryReason;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseService;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseSettings;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseTimeoutException;
 
 
 public final class EmbeddedDatabaseImpl
         implements EmbeddedDatabase {
 
+    private static final String timedOutStatus = Status.Transaction.TransactionTimedOut.code().serialize();
+
     private final GraphDatabaseService database;
-    private final int txRetries;
-    private final long txBackoff;
+    private final EmbeddedDatabaseRetryPolicy retryPolicy;
+    private final EmbeddedDatabaseSlowQueryLog slowQueryLog;
+    private final ScheduledExecutorService scheduler;
+    private final EmbeddedDatabaseLoggingProviderAdapter logProvider;
+    private final boolean lazyEntities;
+    private final EmbeddedDatabaseSpillStore spillStore;
+
+    // the futures of asynchronous transactions that are not completed yet; a shutdown fails them
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
 
-    EmbeddedDatabaseImpl(Path configFile,
-                         Path storeDirectory,
-                         EmbeddedDatabaseLoggingProvider loggingProvider,
-                         boolean dbHighlyAvailable,
-                         int txRetries,
-                         long txBackoff) {
+    private volatile boolean shutdown;
+
+    EmbeddedDatabaseImpl(EmbeddedDatabaseSettings settings) {
 
         GraphDatabaseBuilder builder;
 
-        if (dbHighlyAvailable)
-            builder =
-                    new HighlyAvailableGraphDatabaseFactory()
-                            .setUserLogProvider(new EmbeddedDatabaseLoggingProviderAdapter(loggingProvider))
-                            .newEmbeddedDatabaseBuilder(storeDirectory.toFile());
-        else
-            builder =
-                    new GraphDatabaseFactory()
-                            .setUserLogProvider(new EmbeddedDatabaseLoggingProviderAdapter(loggingProvider))
-                            .newEmbeddedDatabaseBuilder(storeDirectory.toFile());
+        this.retryPolicy = settings.getRetryPolicy();
+        this.lazyEntities = settings.isLazyEntities();
+
+        this.spillStore =
+                new EmbeddedDatabaseSpillStore(
+                        settings.getSpillDirectory(),
+                        settings.getSpillThreshold(),
+                        settings.getSpillMaxBytes());
+
+        this.logProvider =
+                new EmbeddedDatabaseLoggingProviderAdapter(
+                        settings.getLoggingProvider(),
+                        settings.getLogBufferSize(),
+                        settings.isLogBufferBlocking());
+
+        try {
+
+            if (settings.isHighlyAvailable())
+                builder =
+                        new HighlyAvailableGraphDatabaseFactory()
+                                .setUserLogProvider(logProvider)
+                                .newEmbeddedDatabaseBuilder(settings.getStoreDirectory().toFile());
+            else
+                builder =
+                        new GraphDatabaseFactory()
+                                .setUserLogProvider(logProvider)
+                                .newEmbeddedDatabaseBuilder(settings.getStoreDirectory().toFile());
+
+            builder.loadPropertiesFromFile(settings.getConfigFile().toString());
+
+            this.database = builder.newGraphDatabase();
+
+        } catch (RuntimeException | Error e) {
+
+            // the appender thread of the log provider would otherwise outlive a database that failed to start
+            logProvider.close();
+
+            throw e;
+        }
+
+        this.slowQueryLog =
+                new EmbeddedDatabaseSlowQueryLog(
+                        database,
+                        settings.getLoggingProvider().getLogger(EmbeddedDatabaseSlowQueryLog.class.getName()),
+                        settings.getSlowQueryThreshold(),
+                        settings.isSlowQueryProfile());
+
+        // the scheduler only fires the timers of asynchronous retries and statement timeouts; the attempts run on
+        // the caller's executor
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, (runnable) -> {
 
-        builder.loadPropertiesFromFile(configFile.toString());
+            Thread thread = new Thread(runnable, "neo4j-transaction-timer");
 
-        this.database = builder.newGraphDatabase();
-        this.txRetries = txRetries;
-        this.txBackoff = txBackoff;
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        // most statement timers are cancelled long before they expire and should not stay in the queue
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        this.scheduler = scheduler;
     }
 
     public boolean waitAvailable(long timeout) {
@@ -55,52 +118,285 @@ public final class EmbeddedDatabaseImpl
 
     public void shutdown() {
 
+        shutdown = true;
+
+        // retries waiting on the scheduler are dropped, so their callers must be completed here
+        scheduler.shutdownNow();
+
+        for (CompletableFuture<?> future : pending)
+            future.completeExceptionally(
+                    new IllegalStateException("Cannot complete a transaction on a database that is shut down."));
+
         database.shutdown();
+        logProvider.close();
     }
 
     public <T> T withTransaction(Function<EmbeddedDatabaseService, T> block)
             throws Throwable {
 
-        EmbeddedDatabaseService service = new EmbeddedDatabaseServiceImpl(database);
+        return withTransaction(block, EmbeddedDatabaseIntent.READ_WRITE);
+    }
+
+    public <T> T withTransaction(Function<EmbeddedDatabaseService, T> block, EmbeddedDatabaseIntent intent)
+            throws Throwable {
+
+        return withTransaction(block, intent, 0);
+    }
 
-        int retries = txRetries;
-        Throwable throwable;
+    public <T> T withTransaction(Function<EmbeddedDatabaseService, T> block,
+                                 EmbeddedDatabaseIntent intent,
+                                 long timeout)
+            throws Throwable {
 
-        do {
+        if (shutdown)
+            throw new IllegalStateException("Cannot begin a transaction on a database that is shut down.");
 
-            Transaction tx;
+        EmbeddedDatabaseTransactionContext context = new EmbeddedDatabaseTransactionContext(scheduler);
+        EmbeddedDatabaseService service =
+                new EmbeddedDatabaseServiceImpl(database, slowQueryLog, context, 0, lazyEntities, spillStore);
+        RetryState state = new RetryState();
 
-            synchronized (this) {
+        while (true) {
 
-                tx = database.beginTx();
-            }
+            T result;
 
             try {
 
-                T result = block.apply(service);
+                result = runOnce(service, context, block, intent, timeout);
 
-                tx.success();
+            } catch (Throwable e) {
 
-                return result;
+                long delay = nextRetryDelay(state, e);
 
-            } catch (DeadlockDetectedException | TransactionTerminatedException e) {
+                if (delay < 0)
+                    throw e;
 
-                throwable = e;
-                Thread.sleep(txBackoff);
+                Thread.sleep(delay);
 
-            } catch (Throwable e) {
+                continue;
+            }
+
+            retryPolicy.onFinished(state.retries, true);
+
+            return result;
+        }
+    }
+
+    public <T> CompletionStage<T> withTransactionAsync(Function<EmbeddedDatabaseService, T> block,
+                                                       Executor executor) {
+
+        return withTransactionAsync(block, EmbeddedDatabaseIntent.READ_WRITE, executor);
+    }
+
+    public <T> CompletionStage<T> withTransactionAsync(Function<EmbeddedDatabaseService, T> block,
+                                                       EmbeddedDatabaseIntent intent,
+                                                       Executor executor) {
+
+        return withTransactionAsync(block, intent, 0, executor);
+    }
+
+    public <T> CompletionStage<T> withTransactionAsync(Function<EmbeddedDatabaseService, T> block,
+                                                       EmbeddedDatabaseIntent intent,
+                                                       long timeout,
+                                                       Executor executor) {
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        if (shutdown) {
+
+            future.completeExceptionally(
+                    new IllegalStateException("Cannot begin a transaction on a database that is shut down."));
+
+        } else {
+
+            EmbeddedDatabaseTransactionContext context = new EmbeddedDatabaseTransactionContext(scheduler);
+            EmbeddedDatabaseService service =
+                    new EmbeddedDatabaseServiceImpl(database, slowQueryLog, context, 0, lazyEntities, spillStore);
+            RetryState state = new RetryState();
+
+            pending.add(future);
+            future.whenComplete((result, throwable) -> pending.remove(future));
+
+            submit(executor, () -> runAsync(service, context, block, intent, timeout, executor, state, future), future);
+        }
+
+        return future;
+    }
+
+    private <T> void runAsync(EmbeddedDatabaseService service,
+                              EmbeddedDatabaseTransactionContext context,
+                              Function<EmbeddedDatabaseService, T> block,
+                              EmbeddedDatabaseIntent intent,
+                              long timeout,
+                              Executor executor,
+                              RetryState state,
+                              CompletableFuture<T> future) {
+
+        T result;
+
+        try {
+
+            result = runOnce(service, context, block, intent, timeout);
+
+        } catch (Throwable e) {
+
+            long delay = nextRetryDelay(state, e);
 
-                retries = 0;
-                throwable = e;
-                tx.failure();
+            if (delay < 0) {
 
-            } finally {
+                future.completeExceptionally(e);
 
-                tx.close();
+            } else {
+
+                try {
+
+                    Runnable retry = () -> runAsync(service, context, block, intent, timeout, executor, state, future);
+
+                    scheduler.schedule(
+                            () -> submit(executor, retry, future),
+                            delay,
+                            TimeUnit.MILLISECONDS);
+
+                } catch (RejectedExecutionException rejected) {
+
+                    future.completeExceptionally(e);
+                }
             }
 
-        } while (retries-- > 0);
+            return;
+        }
+
+        retryPolicy.onFinished(state.retries, true);
+        future.complete(result);
+    }
+
+    private void submit(Executor executor, Runnable task, CompletableFuture<?> future) {
+
+        try {
+
+            executor.execute(task);
+
+        } catch (RejectedExecutionException e) {
+
+            future.completeExceptionally(e);
+        }
+    }
+
+    private <T> T runOnce(EmbeddedDatabaseService service,
+                          EmbeddedDatabaseTransactionContext context,
+                          Function<EmbeddedDatabaseService, T> block,
+                          EmbeddedDatabaseIntent intent,
+                          long timeout) {
+
+        // beginning a transaction is thread-safe in Neo4j and does not need to be serialized
+        try (Transaction tx = beginTx(intent, timeout)) {
+
+            context.begin(tx);
+
+            T result = block.apply(service);
+
+            tx.success();
+
+            return result;
+
+        } catch (RuntimeException e) {
+
+            // a terminated statement fails with the same exception as any other termination
+            if (context.isTimedOut())
+                throw new EmbeddedDatabaseTimeoutException("A statement of the transaction exceeded its timeout.", e);
+
+            throw e;
+
+        } finally {
+
+            context.end();
+        }
+    }
+
+    private Transaction beginTx(EmbeddedDatabaseIntent intent, long timeout) {
+
+        // a read-only transaction runs with a read access mode, so an accidental write fails instead of being
+        // forwarded to the master
+        if (intent == EmbeddedDatabaseIntent.READ_ONLY) {
+
+            SecurityContext securityContext = SecurityContext.AUTH_DISABLED.withMode(AccessMode.Static.READ);
+
+            if (timeout > 0)
+                return ((GraphDatabaseAPI) database).beginTransaction(
+                        KernelTransaction.Type.explicit, securityContext, timeout, TimeUnit.MILLISECONDS);
+
+            return ((GraphDatabaseAPI) database).beginTransaction(KernelTransaction.Type.explicit, securityContext);
+        }
+
+        // the timeout is enforced by the transaction monitor of Neo4j, which terminates the transaction
+        if (timeout > 0)
+            return database.beginTx(timeout, TimeUnit.MILLISECONDS);
+
+        return database.beginTx();
+    }
+
+    // Returns the delay before the next attempt or a negative number if the transaction should not be retried.
+    private long nextRetryDelay(RetryState state, Throwable throwable) {
+
+        // the failed transaction is already closed here, so its locks are not held during the backoff
+        EmbeddedDatabaseRetryReason reason = classify(throwable);
+
+        if (reason != null)
+            retryPolicy.onFailure(reason);
+
+        if (reason == null || state.retries >= retryPolicy.getMaxRetries() ||
+                !retryPolicy.isRetryable(reason, throwable)) {
+
+            retryPolicy.onFinished(state.retries, false);
+
+            return -1;
+        }
+
+        long backoff = retryPolicy.getBackoff(state.retries + 1, state.backoff);
+
+        if (System.currentTimeMillis() - state.start + backoff > retryPolicy.getMaxRetryTime()) {
+
+            retryPolicy.onFinished(state.retries, false);
+
+            return -1;
+        }
+
+        state.retries++;
+        state.backoff = backoff;
+
+        return backoff;
+    }
+
+    private EmbeddedDatabaseRetryReason classify(Throwable throwable) {
+
+        // deadlocks detected on commit are wrapped into a transaction failure
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+
+            if (cause instanceof DeadlockDetectedException)
+                return EmbeddedDatabaseRetryReason.DEADLOCK;
+
+            if (cause instanceof EmbeddedDatabaseTimeoutException)
+                return EmbeddedDatabaseRetryReason.TIMEOUT;
+
+            // the transaction monitor terminates a transaction that exceeded its timeout with its own status
+            if (cause instanceof TransactionTerminatedException)
+                return ((TransactionTerminatedException) cause).status() == Status.Transaction.TransactionTimedOut
+                        ? EmbeddedDatabaseRetryReason.TIMEOUT
+                        : EmbeddedDatabaseRetryReason.TERMINATED;
+
+            // Cypher reports a termination during a query only by the status code of its own exception
+            if (cause instanceof QueryExecutionException &&
+                    timedOutStatus.equals(((QueryExecutionException) cause).getStatusCode()))
+                return EmbeddedDatabaseRetryReason.TIMEOUT;
+        }
+
+        return null;
+    }
+
+    private static final class RetryState {
 
-        throw throwable;
+        private final long start = System.currentTimeMillis();
+        private long backoff = 0;
+        private int retries = 0;
     }
 }
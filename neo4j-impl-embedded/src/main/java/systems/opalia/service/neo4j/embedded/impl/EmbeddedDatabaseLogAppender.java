@@ -0,0 +1,254 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseLogger;
+
+
+// Hands log messages over to a background thread through a bounded ring buffer. Producers claim a slot with a single
+// CAS on the head sequence and publish it with an ordered write, so logging threads never contend on a monitor. If
+// the buffer is full, a message is either dropped or the producer waits for a free slot.
+public final class EmbeddedDatabaseLogAppender
+        implements AutoCloseable {
+
+    static final int DEBUG = 0;
+    static final int INFO = 1;
+    static final int WARNING = 2;
+    static final int ERROR = 3;
+
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final EmbeddedDatabaseLogger errorLogger;
+    private final boolean blocking;
+    private final int mask;
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+
+    private long tail;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    EmbeddedDatabaseLogAppender(EmbeddedDatabaseLogger errorLogger, int bufferSize, boolean blocking) {
+
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) * 2 - 1);
+
+        this.errorLogger = errorLogger;
+        this.blocking = blocking;
+        this.mask = capacity - 1;
+        this.entries = new Entry[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+
+        thread = new Thread(this::drain, "neo4j-log-appender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public long getDropped() {
+
+        return dropped.sum();
+    }
+
+    void append(int level, EmbeddedDatabaseLogger logger, String message, Throwable throwable) {
+
+        // after closing, messages are written directly by the calling thread
+        if (closed) {
+
+            write(level, logger, message, throwable);
+            return;
+        }
+
+        long position = head.get();
+
+        while (true) {
+
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+
+                if (head.compareAndSet(position, position + 1))
+                    break;
+
+                position = head.get();
+
+            } else if (difference < 0) {
+
+                if (!blocking) {
+
+                    dropped.increment();
+                    return;
+                }
+
+                if (closed) {
+
+                    write(level, logger, message, throwable);
+                    return;
+                }
+
+                LockSupport.parkNanos(1000);
+                position = head.get();
+
+            } else {
+
+                position = head.get();
+            }
+        }
+
+        int index = (int) position & mask;
+        Entry entry = entries[index];
+
+        entry.level = level;
+        entry.logger = logger;
+        entry.message = message;
+        entry.throwable = throwable;
+
+        sequences.lazySet(index, position + 1);
+
+        if (waiting)
+            LockSupport.unpark(thread);
+    }
+
+    public synchronized void close() {
+
+        if (closed)
+            return;
+
+        closed = true;
+        LockSupport.unpark(thread);
+
+        try {
+
+            thread.join();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // a producer that claimed a slot before the flag was set may publish it after the thread has exited
+        while (tail < head.get())
+            if (!poll())
+                Thread.yield();
+    }
+
+    private void drain() {
+
+        long reported = 0;
+
+        while (true) {
+
+            boolean consumed = poll();
+
+            long count = dropped.sum();
+
+            if (count > reported) {
+
+                writeSafely(WARNING, errorLogger, (count - reported) + " log messages were dropped.", null);
+                reported = count;
+            }
+
+            if (!consumed) {
+
+                if (closed && !poll())
+                    return;
+
+                waiting = true;
+
+                if (!poll())
+                    LockSupport.parkNanos(this, IDLE_WAIT);
+
+                waiting = false;
+            }
+        }
+    }
+
+    // processes all published entries; returns false if none was found
+    private boolean poll() {
+
+        boolean consumed = false;
+
+        while (true) {
+
+            int index = (int) tail & mask;
+
+            if (sequences.get(index) != tail + 1)
+                return consumed;
+
+            Entry entry = entries[index];
+
+            int level = entry.level;
+            EmbeddedDatabaseLogger logger = entry.logger;
+            String message = entry.message;
+            Throwable throwable = entry.throwable;
+
+            entry.logger = null;
+            entry.message = null;
+            entry.throwable = null;
+
+            sequences.lazySet(index, tail + entries.length);
+            tail++;
+
+            writeSafely(level, logger, message, throwable);
+            consumed = true;
+        }
+    }
+
+    static void write(int level, EmbeddedDatabaseLogger logger, String message, Throwable throwable) {
+
+        switch (level) {
+
+            case DEBUG:
+                if (throwable == null) logger.debug(message);
+                else logger.debug(message, throwable);
+                break;
+
+            case INFO:
+                if (throwable == null) logger.info(message);
+                else logger.info(message, throwable);
+                break;
+
+            case WARNING:
+                if (throwable == null) logger.warning(message);
+                else logger.warning(message, throwable);
+                break;
+
+            default:
+                if (throwable == null) logger.error(message);
+                else logger.error(message, throwable);
+                break;
+        }
+    }
+
+    private static void writeSafely(int level, EmbeddedDatabaseLogger logger, String message, Throwable throwable) {
+
+        try {
+
+            write(level, logger, message, throwable);
+
+        } catch (RuntimeException e) {
+
+            // a failing backend must not stop the appender thread
+        }
+    }
+
+    private static final class Entry {
+
+        int level;
+        EmbeddedDatabaseLogger logger;
+        String message;
+        Throwable throwable;
+    }
+}
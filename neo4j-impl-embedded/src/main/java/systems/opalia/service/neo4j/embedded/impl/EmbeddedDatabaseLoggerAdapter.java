@@ -11,167 +11,23 @@ public final class EmbeddedDatabaseLoggerAdapter
         extends AbstractLog {
 
     private final EmbeddedDatabaseLogger logger;
+    private final EmbeddedDatabaseLogAppender appender;
 
     private final Logger debugLogger;
     private final Logger infoLogger;
     private final Logger warnLogger;
     private final Logger errorLogger;
 
-    public EmbeddedDatabaseLoggerAdapter(EmbeddedDatabaseLogger logger) {
+    // without an appender, messages are written by the calling thread
+    public EmbeddedDatabaseLoggerAdapter(EmbeddedDatabaseLogger logger, EmbeddedDatabaseLogAppender appender) {
 
         this.logger = logger;
+        this.appender = appender;
 
-        this.debugLogger = new Logger() {
-
-            public void log(String message) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.debug(message);
-                }
-            }
-
-            public void log(String message, Throwable throwable) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.debug(message, throwable);
-                }
-            }
-
-            public void log(String format, Object... arguments) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    if (isDebugEnabled()) {
-
-                        logger.debug(createMessage(format, arguments));
-                    }
-                }
-            }
-
-            public void bulk(Consumer<Logger> consumer) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    consumer.accept(this);
-                }
-            }
-        };
-
-        this.infoLogger = new Logger() {
-
-            public void log(String message) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.info(message);
-                }
-            }
-
-            public void log(String message, Throwable throwable) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.info(message, throwable);
-                }
-            }
-
-            public void log(String format, Object... arguments) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    if (isInfoEnabled()) {
-
-                        logger.info(createMessage(format, arguments));
-                    }
-                }
-            }
-
-            public void bulk(Consumer<Logger> consumer) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    consumer.accept(this);
-                }
-            }
-        };
-
-        this.warnLogger = new Logger() {
-
-            public void log(String message) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.warning(message);
-                }
-            }
-
-            public void log(String message, Throwable throwable) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.warning(message, throwable);
-                }
-            }
-
-            public void log(String format, Object... arguments) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    if (isWarningEnabled()) {
-
-                        logger.warning(createMessage(format, arguments));
-                    }
-                }
-            }
-
-            public void bulk(Consumer<Logger> consumer) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    consumer.accept(this);
-                }
-            }
-        };
-
-        this.errorLogger = new Logger() {
-
-            public void log(String message) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.error(message);
-                }
-            }
-
-            public void log(String message, Throwable throwable) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    logger.error(message, throwable);
-                }
-            }
-
-            public void log(String format, Object... arguments) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    if (isErrorEnabled()) {
-
-                        logger.error(createMessage(format, arguments));
-                    }
-                }
-            }
-
-            public void bulk(Consumer<Logger> consumer) {
-
-                synchronized (EmbeddedDatabaseLoggerAdapter.this) {
-
-                    consumer.accept(this);
-                }
-            }
-        };
+        this.debugLogger = new LevelLogger(EmbeddedDatabaseLogAppender.DEBUG);
+        this.infoLogger = new LevelLogger(EmbeddedDatabaseLogAppender.INFO);
+        this.warnLogger = new LevelLogger(EmbeddedDatabaseLogAppender.WARNING);
+        this.errorLogger = new LevelLogger(EmbeddedDatabaseLogAppender.ERROR);
     }
 
     public boolean isDebugEnabled() {
@@ -214,27 +70,52 @@ public final class EmbeddedDatabaseLoggerAdapter
         return errorLogger;
     }
 
+    // messages of one thread keep their order, so a bulk needs no lock
     public void bulk(Consumer<Log> consumer) {
 
-        synchronized (EmbeddedDatabaseLoggerAdapter.this) {
+        consumer.accept(this);
+    }
 
-            consumer.accept(this);
+    private boolean isEnabled(int level) {
+
+        switch (level) {
+
+            case EmbeddedDatabaseLogAppender.DEBUG:
+                return logger.isDebugEnabled();
+
+            case EmbeddedDatabaseLogAppender.INFO:
+                return logger.isInfoEnabled();
+
+            case EmbeddedDatabaseLogAppender.WARNING:
+                return logger.isWarningEnabled();
+
+            default:
+                return logger.isErrorEnabled();
         }
     }
 
-    private String createMessage(String format, Object... arguments) {
+    private void write(int level, String message, Throwable throwable) {
+
+        if (appender != null)
+            appender.append(level, logger, message, throwable);
+        else
+            EmbeddedDatabaseLogAppender.write(level, logger, message, throwable);
+    }
 
-        char[] array = format.toCharArray();
-        StringBuilder builder = new StringBuilder();
+    private static String createMessage(String format, Object... arguments) {
+
+        StringBuilder builder = new StringBuilder(format.length() + 16 * arguments.length);
 
         int i = 0, j = 0;
 
-        while (i < array.length) {
+        while (i < format.length()) {
+
+            char c = format.charAt(i);
 
-            if (i + 1 < array.length && array[i] == '%' && array[i + 1] == 's') {
+            if (c == '%' && i + 1 < format.length() && format.charAt(i + 1) == 's') {
 
                 if (j < arguments.length)
-                    builder.append(arguments[j].toString());
+                    builder.append(arguments[j]);
                 else
                     builder.append("NULL");
 
@@ -243,7 +124,7 @@ public final class EmbeddedDatabaseLoggerAdapter
 
             } else {
 
-                builder.append(array[i]);
+                builder.append(c);
             }
 
             i++;
@@ -251,4 +132,39 @@ public final class EmbeddedDatabaseLoggerAdapter
 
         return builder.toString();
     }
+
+    private final class LevelLogger
+            implements Logger {
+
+        private final int level;
+
+        LevelLogger(int level) {
+
+            this.level = level;
+        }
+
+        public void log(String message) {
+
+            if (isEnabled(level))
+                write(level, message, null);
+        }
+
+        public void log(String message, Throwable throwable) {
+
+            if (isEnabled(level))
+                write(level, message, throwable);
+        }
+
+        // the message is only formatted if the level is enabled
+        public void log(String format, Object... arguments) {
+
+            if (isEnabled(level))
+                write(level, createMessage(format, arguments), null);
+        }
+
+        public void bulk(Consumer<Logger> consumer) {
+
+            consumer.accept(this);
+        }
+    }
 }
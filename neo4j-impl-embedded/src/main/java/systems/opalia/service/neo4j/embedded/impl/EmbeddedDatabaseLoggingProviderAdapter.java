@@ -1,27 +1,54 @@
 package systems.opalia.service.neo4j.embedded.impl;
 
+import java.util.concurrent.ConcurrentHashMap;
 import org.neo4j.logging.Log;
 import org.neo4j.logging.LogProvider;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseLoggingProvider;
 
 
 public final class EmbeddedDatabaseLoggingProviderAdapter
-        implements LogProvider {
+        implements LogProvider, AutoCloseable {
 
     private final EmbeddedDatabaseLoggingProvider loggingProvider;
+    private final EmbeddedDatabaseLogAppender appender;
+    private final ConcurrentHashMap<String, Log> logs = new ConcurrentHashMap<>();
 
-    public EmbeddedDatabaseLoggingProviderAdapter(EmbeddedDatabaseLoggingProvider loggingProvider) {
+    // a buffer size of zero or less writes messages synchronously on the logging thread
+    public EmbeddedDatabaseLoggingProviderAdapter(EmbeddedDatabaseLoggingProvider loggingProvider,
+                                                  int bufferSize,
+                                                  boolean blocking) {
 
         this.loggingProvider = loggingProvider;
+
+        if (bufferSize > 0)
+            this.appender =
+                    new EmbeddedDatabaseLogAppender(
+                            loggingProvider.getLogger(EmbeddedDatabaseLogAppender.class.getName()),
+                            bufferSize,
+                            blocking);
+        else
+            this.appender = null;
     }
 
     public Log getLog(String name) {
 
-        return new EmbeddedDatabaseLoggerAdapter(loggingProvider.getLogger(name));
+        Log log = logs.get(name);
+
+        if (log != null)
+            return log;
+
+        return logs.computeIfAbsent(name, x -> new EmbeddedDatabaseLoggerAdapter(loggingProvider.getLogger(x), appender));
     }
 
     public Log getLog(Class clazz) {
 
-        return new EmbeddedDatabaseLoggerAdapter(loggingProvider.getLogger(clazz.getName()));
+        return getLog(clazz.getName());
+    }
+
+    // writes the buffered messages and stops the appender thread
+    public void close() {
+
+        if (appender != null)
+            appender.close();
     }
 }
@@ -0,0 +1,187 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.*;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabasePreparedStatement;
+
+
+public final class EmbeddedDatabasePreparedStatementImpl
+        implements EmbeddedDatabasePreparedStatement {
+
+    // the keywords after which a braced name is a parameter and not the variable selector of a map projection
+    private static final Set<String> expressionKeywords =
+            new HashSet<>(Arrays.asList(
+                    "AND", "BY", "CASE", "CONTAINS", "DELETE", "DISTINCT", "ELSE", "ENDS", "FROM", "IN", "IS",
+                    "LIMIT", "NOT", "OR", "REMOVE", "RETURN", "SET", "SKIP", "STARTS", "THEN", "UNWIND", "WHEN",
+                    "WHERE", "WITH", "XOR", "YIELD"));
+
+    private final String clause;
+    private final List<String> parameterNames;
+    private final boolean readOnly;
+
+    EmbeddedDatabasePreparedStatementImpl(String clause, List<String> parameterNames, boolean readOnly) {
+
+        this.clause = clause;
+        this.parameterNames = Collections.unmodifiableList(new ArrayList<>(parameterNames));
+        this.readOnly = readOnly;
+    }
+
+    public String getClause() {
+
+        return clause;
+    }
+
+    public List<String> getParameterNames() {
+
+        return parameterNames;
+    }
+
+    public boolean isReadOnly() {
+
+        return readOnly;
+    }
+
+    // Finds parameters written as $name or {name}; string literals, quoted identifiers and comments are skipped. A
+    // braced name after a variable is not taken as a parameter, since it is the variable selector of a map projection
+    // like "n {friend}"; a legacy parameter in the same position, like "(n {props})", is still passed when binding.
+    static List<String> parseParameterNames(String clause) {
+
+        List<String> names = new ArrayList<>();
+        int length = clause.length();
+        int i = 0;
+
+        while (i < length) {
+
+            char c = clause.charAt(i);
+
+            if (c == '\'' || c == '"') {
+
+                i = skipQuoted(clause, i, c);
+
+            } else if (c == '`') {
+
+                i = skipQuoted(clause, i, '`');
+
+            } else if (c == '/' && i + 1 < length && clause.charAt(i + 1) == '/') {
+
+                while (i < length && clause.charAt(i) != '\n')
+                    i++;
+
+            } else if (c == '/' && i + 1 < length && clause.charAt(i + 1) == '*') {
+
+                int end = clause.indexOf("*/", i + 2);
+
+                i = end < 0 ? length : end + 2;
+
+            } else if (c == '$') {
+
+                int end = scanName(clause, i + 1);
+
+                if (end > i + 1)
+                    addName(names, unquote(clause.substring(i + 1, end)));
+
+                i = Math.max(end, i + 1);
+
+            } else if (c == '{') {
+
+                // a map literal continues with a colon after the key, a parameter is closed right after its name
+                int start = skipWhitespace(clause, i + 1);
+                int end = scanName(clause, start);
+                int close = skipWhitespace(clause, end);
+
+                if (end > start && close < length && clause.charAt(close) == '}' && !followsVariable(clause, i)) {
+
+                    addName(names, unquote(clause.substring(start, end)));
+                    i = close + 1;
+
+                } else {
+
+                    i++;
+                }
+
+            } else {
+
+                i++;
+            }
+        }
+
+        return names;
+    }
+
+    // true if the brace follows a name that is not a keyword starting an expression
+    private static boolean followsVariable(String clause, int brace) {
+
+        int end = brace;
+
+        while (end > 0 && Character.isWhitespace(clause.charAt(end - 1)))
+            end--;
+
+        if (end > 0 && clause.charAt(end - 1) == '`')
+            return true;
+
+        int start = end;
+
+        while (start > 0 && Character.isJavaIdentifierPart(clause.charAt(start - 1)))
+            start--;
+
+        if (start == end || clause.charAt(start) == '$' || Character.isDigit(clause.charAt(start)))
+            return false;
+
+        return !expressionKeywords.contains(clause.substring(start, end).toUpperCase(Locale.ROOT));
+    }
+
+    private static int skipQuoted(String clause, int start, char quote) {
+
+        int i = start + 1;
+
+        while (i < clause.length()) {
+
+            char c = clause.charAt(i);
+
+            if (c == '\\' && quote != '`')
+                i += 2;
+            else if (c == quote)
+                return i + 1;
+            else
+                i++;
+        }
+
+        return i;
+    }
+
+    private static int skipWhitespace(String clause, int start) {
+
+        int i = start;
+
+        while (i < clause.length() && Character.isWhitespace(clause.charAt(i)))
+            i++;
+
+        return i;
+    }
+
+    private static int scanName(String clause, int start) {
+
+        if (start < clause.length() && clause.charAt(start) == '`')
+            return skipQuoted(clause, start, '`');
+
+        int i = start;
+
+        while (i < clause.length() && Character.isJavaIdentifierPart(clause.charAt(i)))
+            i++;
+
+        return i;
+    }
+
+    private static String unquote(String name) {
+
+        if (name.length() >= 2 && name.startsWith("`") && name.endsWith("`"))
+            return name.substring(1, name.length() - 1);
+
+        return name;
+    }
+
+    private static void addName(List<String> names, String name) {
+
+        if (!names.contains(name))
+            names.add(name);
+    }
+}
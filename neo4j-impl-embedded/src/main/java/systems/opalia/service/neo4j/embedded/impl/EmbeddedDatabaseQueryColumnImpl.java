@@ -0,0 +1,244 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.Arrays;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseColumnType;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryColumn;
+
+
+// A column that is filled row by row. The type is chosen by the first value that is not null; if a later value does
+// not fit, the column falls back to objects. Null values are marked in a bitmap.
+public final class EmbeddedDatabaseQueryColumnImpl
+        implements EmbeddedDatabaseQueryColumn {
+
+    private final String name;
+    private final boolean lazyEntities;
+
+    private EmbeddedDatabaseColumnType type;
+    private boolean typed;
+    private int size;
+    private long[] nulls = new long[1];
+    private long[] longs;
+    private double[] doubles;
+    private boolean[] booleans;
+    private Object[] objects;
+
+    EmbeddedDatabaseQueryColumnImpl(String name, boolean lazyEntities) {
+
+        this.name = name;
+        this.lazyEntities = lazyEntities;
+        this.type = EmbeddedDatabaseColumnType.OBJECT;
+        this.objects = new Object[16];
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public EmbeddedDatabaseColumnType getType() {
+
+        return type;
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public boolean isNull(int row) {
+
+        checkRow(row);
+
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public long getLong(int row) {
+
+        checkRow(row);
+
+        if (type != EmbeddedDatabaseColumnType.LONG)
+            throw typeMismatch(EmbeddedDatabaseColumnType.LONG);
+
+        return longs[row];
+    }
+
+    public double getDouble(int row) {
+
+        checkRow(row);
+
+        if (type == EmbeddedDatabaseColumnType.LONG)
+            return longs[row];
+
+        if (type != EmbeddedDatabaseColumnType.DOUBLE)
+            throw typeMismatch(EmbeddedDatabaseColumnType.DOUBLE);
+
+        return doubles[row];
+    }
+
+    public boolean getBoolean(int row) {
+
+        checkRow(row);
+
+        if (type != EmbeddedDatabaseColumnType.BOOLEAN)
+            throw typeMismatch(EmbeddedDatabaseColumnType.BOOLEAN);
+
+        return booleans[row];
+    }
+
+    public Object getObject(int row) {
+
+        if (isNull(row))
+            return null;
+
+        switch (type) {
+
+            case LONG:
+                return longs[row];
+
+            case DOUBLE:
+                return doubles[row];
+
+            case BOOLEAN:
+                return booleans[row];
+
+            default:
+                return objects[row];
+        }
+    }
+
+    void add(Object value) {
+
+        if (size == nulls.length * 64)
+            nulls = Arrays.copyOf(nulls, nulls.length * 2);
+
+        if (!typed && value != null)
+            chooseType(value);
+
+        if (value == null) {
+
+            nulls[size >>> 6] |= 1L << size;
+            ensureCapacity(size + 1);
+
+        } else if (type == EmbeddedDatabaseColumnType.LONG && (value instanceof Long || value instanceof Integer ||
+                value instanceof Short || value instanceof Byte)) {
+
+            ensureCapacity(size + 1);
+            longs[size] = ((Number) value).longValue();
+
+        } else if (type == EmbeddedDatabaseColumnType.DOUBLE && (value instanceof Double || value instanceof Float)) {
+
+            ensureCapacity(size + 1);
+            doubles[size] = ((Number) value).doubleValue();
+
+        } else if (type == EmbeddedDatabaseColumnType.BOOLEAN && value instanceof Boolean) {
+
+            ensureCapacity(size + 1);
+            booleans[size] = (Boolean) value;
+
+        } else {
+
+            if (type != EmbeddedDatabaseColumnType.OBJECT)
+                toObjects();
+
+            ensureCapacity(size + 1);
+            objects[size] = EmbeddedDatabaseQueryRowImpl.normalize(value, lazyEntities);
+        }
+
+        size++;
+    }
+
+    private void chooseType(Object value) {
+
+        typed = true;
+
+        // a column that started with null values keeps them in the bitmap, so the object array can be dropped
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+
+            type = EmbeddedDatabaseColumnType.LONG;
+            longs = new long[Math.max(16, objects.length)];
+            objects = null;
+
+        } else if (value instanceof Double || value instanceof Float) {
+
+            type = EmbeddedDatabaseColumnType.DOUBLE;
+            doubles = new double[Math.max(16, objects.length)];
+            objects = null;
+
+        } else if (value instanceof Boolean) {
+
+            type = EmbeddedDatabaseColumnType.BOOLEAN;
+            booleans = new boolean[Math.max(16, objects.length)];
+            objects = null;
+        }
+    }
+
+    private void toObjects() {
+
+        Object[] boxed = new Object[Math.max(16, capacity())];
+
+        for (int i = 0; i < size; i++)
+            boxed[i] = getObject(i);
+
+        type = EmbeddedDatabaseColumnType.OBJECT;
+        objects = boxed;
+        longs = null;
+        doubles = null;
+        booleans = null;
+    }
+
+    private int capacity() {
+
+        switch (type) {
+
+            case LONG:
+                return longs.length;
+
+            case DOUBLE:
+                return doubles.length;
+
+            case BOOLEAN:
+                return booleans.length;
+
+            default:
+                return objects.length;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+
+        if (capacity <= capacity())
+            return;
+
+        int length = Math.max(capacity, capacity() * 2);
+
+        switch (type) {
+
+            case LONG:
+                longs = Arrays.copyOf(longs, length);
+                break;
+
+            case DOUBLE:
+                doubles = Arrays.copyOf(doubles, length);
+                break;
+
+            case BOOLEAN:
+                booleans = Arrays.copyOf(booleans, length);
+                break;
+
+            default:
+                objects = Arrays.copyOf(objects, length);
+                break;
+        }
+    }
+
+    private void checkRow(int row) {
+
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for column " + name + ".");
+    }
+
+    private IllegalStateException typeMismatch(EmbeddedDatabaseColumnType expected) {
+
+        return new IllegalStateException("Expect column " + name + " of type " + expected + " but it is " + type + ".");
+    }
+}
@@ -0,0 +1,83 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryColumn;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryColumnTable;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics;
+
+
+public final class EmbeddedDatabaseQueryColumnTableImpl
+        implements EmbeddedDatabaseQueryColumnTable {
+
+    private final EmbeddedDatabaseQueryStatistics statistics;
+    private final EmbeddedDatabaseQueryHeader header;
+    private final EmbeddedDatabaseQueryColumnImpl[] columns;
+    private final int size;
+
+    private volatile List<EmbeddedDatabaseQueryRow> rows;
+
+    EmbeddedDatabaseQueryColumnTableImpl(EmbeddedDatabaseQueryStatistics statistics,
+                                         EmbeddedDatabaseQueryHeader header,
+                                         EmbeddedDatabaseQueryColumnImpl[] columns,
+                                         int size) {
+
+        this.statistics = statistics;
+        this.header = header;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    public EmbeddedDatabaseQueryStatistics getStatistics() {
+
+        return statistics;
+    }
+
+    public EmbeddedDatabaseQueryHeader getHeader() {
+
+        return header;
+    }
+
+    public List<String> getColumns() {
+
+        return header.getColumns();
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public EmbeddedDatabaseQueryColumn getColumn(int index) {
+
+        return columns[index];
+    }
+
+    public List<EmbeddedDatabaseQueryRow> getRows() {
+
+        List<EmbeddedDatabaseQueryRow> result = rows;
+
+        if (result == null) {
+
+            List<EmbeddedDatabaseQueryRow> created = new ArrayList<>(size);
+
+            for (int i = 0; i < size; i++) {
+
+                Object[] values = new Object[columns.length];
+
+                for (int j = 0; j < columns.length; j++)
+                    values[j] = columns[j].getObject(i);
+
+                created.add(EmbeddedDatabaseQueryRowImpl.of(header, values));
+            }
+
+            result = Collections.unmodifiableList(created);
+            rows = result;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ScheduledFuture;
+import org.neo4j.graphdb.Result;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryCursor;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics;
+
+
+public final class EmbeddedDatabaseQueryCursorImpl
+        implements EmbeddedDatabaseQueryCursor {
+
+    private final Result result;
+    private final EmbeddedDatabaseQueryHeader header;
+    private final String clause;
+    private final Map<String, Object> parameters;
+    private final EmbeddedDatabaseSlowQueryLog slowQueryLog;
+    private final long start;
+    private final ScheduledFuture<?> timer;
+    private final boolean lazyEntities;
+
+    private long rows = 0;
+    private boolean closed = false;
+
+    EmbeddedDatabaseQueryCursorImpl(Result result,
+                                    String clause,
+                                    Map<String, Object> parameters,
+                                    EmbeddedDatabaseSlowQueryLog slowQueryLog,
+                                    long start,
+                                    ScheduledFuture<?> timer,
+                                    boolean lazyEntities) {
+
+        this.result = result;
+        this.header = new EmbeddedDatabaseQueryHeaderImpl(result.columns());
+        this.clause = clause;
+        this.parameters = parameters;
+        this.slowQueryLog = slowQueryLog;
+        this.start = start;
+        this.timer = timer;
+        this.lazyEntities = lazyEntities;
+    }
+
+    public EmbeddedDatabaseQueryStatistics getStatistics() {
+
+        return new EmbeddedDatabaseQueryStatisticsImpl(result.getQueryStatistics());
+    }
+
+    public EmbeddedDatabaseQueryHeader getHeader() {
+
+        return header;
+    }
+
+    public List<String> getColumns() {
+
+        return header.getColumns();
+    }
+
+    public boolean hasNext() {
+
+        return result.hasNext();
+    }
+
+    public EmbeddedDatabaseQueryRow next() {
+
+        if (!result.hasNext())
+            throw new NoSuchElementException("The cursor is exhausted.");
+
+        rows++;
+
+        return EmbeddedDatabaseQueryRowImpl.from(header, result.next(), lazyEntities);
+    }
+
+    public void close() {
+
+        if (closed)
+            return;
+
+        closed = true;
+        EmbeddedDatabaseServiceImpl.stopTimer(timer);
+        result.close();
+
+        // a streamed statement is timed from its start until it is closed
+        long duration = System.nanoTime() - start;
+
+        if (slowQueryLog.isSlow(duration))
+            slowQueryLog.log(clause, parameters, result, duration, rows);
+    }
+}
@@ -0,0 +1,35 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
+
+
+public final class EmbeddedDatabaseQueryHeaderImpl
+        implements EmbeddedDatabaseQueryHeader {
+
+    private final String[] columns;
+    private final List<String> columnList;
+
+    EmbeddedDatabaseQueryHeaderImpl(List<String> columns) {
+
+        this.columns = columns.toArray(new String[0]);
+        this.columnList = Collections.unmodifiableList(Arrays.asList(this.columns));
+    }
+
+    public int size() {
+
+        return columns.length;
+    }
+
+    public String getColumn(int index) {
+
+        return columns[index];
+    }
+
+    public List<String> getColumns() {
+
+        return columnList;
+    }
+}
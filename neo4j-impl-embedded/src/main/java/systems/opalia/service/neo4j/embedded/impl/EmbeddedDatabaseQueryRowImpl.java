@@ -6,35 +6,107 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Result;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
 
 
 public final class EmbeddedDatabaseQueryRowImpl
         implements EmbeddedDatabaseQueryRow {
 
-    private final Map<String, Object> row;
+    private final EmbeddedDatabaseQueryHeader header;
+    private final Object[] values;
 
-    EmbeddedDatabaseQueryRowImpl(List<String> columns, Map<String, Object> row) {
+    private EmbeddedDatabaseQueryRowImpl(EmbeddedDatabaseQueryHeader header, Object[] values) {
 
-        this.row = normalize(columns, row);
+        this.header = header;
+        this.values = values;
     }
 
-    public Map<String, Object> getData() {
+    static EmbeddedDatabaseQueryRowImpl from(EmbeddedDatabaseQueryHeader header,
+                                             Map<String, Object> row,
+                                             boolean lazyEntities) {
+
+        Object[] values = new Object[header.size()];
+
+        for (int i = 0; i < values.length; i++)
+            values[i] = normalize(row.get(header.getColumn(i)), lazyEntities);
 
-        return copy(row);
+        return new EmbeddedDatabaseQueryRowImpl(header, values);
     }
 
-    private Map<String, Object> normalize(List<String> columns, Map<String, Object> row) {
+    // the values must already be normalized
+    static EmbeddedDatabaseQueryRowImpl of(EmbeddedDatabaseQueryHeader header, Object[] values) {
+
+        return new EmbeddedDatabaseQueryRowImpl(header, values);
+    }
 
-        Map<String, Object> result = new LinkedHashMap<>();
+    static EmbeddedDatabaseQueryRowImpl from(EmbeddedDatabaseQueryHeader header,
+                                             Result.ResultRow row,
+                                             boolean lazyEntities) {
+
+        Object[] values = new Object[header.size()];
+
+        for (int i = 0; i < values.length; i++)
+            values[i] = normalize(row.get(header.getColumn(i)), lazyEntities);
+
+        return new EmbeddedDatabaseQueryRowImpl(header, values);
+    }
 
-        for (String key : columns)
-            result.put(key, normalize(row.get(key)));
+    public EmbeddedDatabaseQueryHeader getHeader() {
 
-        return result;
+        return header;
     }
 
-    private Object normalize(Object value) {
+    public Object getValue(int index) {
+
+        return values[index];
+    }
+
+    public Map<String, Object> getData() {
+
+        return new AbstractMap<String, Object>() {
+
+            public Set<Entry<String, Object>> entrySet() {
+
+                return new AbstractSet<Entry<String, Object>>() {
+
+                    public Iterator<Entry<String, Object>> iterator() {
+
+                        return new Iterator<Entry<String, Object>>() {
+
+                            private int index = 0;
+
+                            public boolean hasNext() {
+
+                                return index < values.length;
+                            }
+
+                            public Entry<String, Object> next() {
+
+                                if (index >= values.length)
+                                    throw new NoSuchElementException();
+
+                                Entry<String, Object> entry =
+                                        new SimpleImmutableEntry<>(header.getColumn(index), values[index]);
+
+                                index++;
+
+                                return entry;
+                            }
+                        };
+                    }
+
+                    public int size() {
+
+                        return values.length;
+                    }
+                };
+            }
+        };
+    }
+
+    static Object normalize(Object value, boolean lazyEntities) {
 
         if (value == null)
             return null;
@@ -66,27 +138,9 @@ public final class EmbeddedDatabaseQueryRowImpl
         if (value instanceof String)
             return value;
 
-        if (value instanceof Node) {
-
-            Map<String, Object> result = new LinkedHashMap<>();
-            Node node = ((Node) value);
-
-            for (String key : node.getPropertyKeys())
-                result.put(key, normalize(node.getProperty(key)));
-
-            return result;
-        }
-
-        if (value instanceof Relationship) {
-
-            Map<String, Object> result = new LinkedHashMap<>();
-            Relationship relationship = ((Relationship) value);
-
-            for (String key : relationship.getPropertyKeys())
-                result.put(key, normalize(relationship.getProperty(key)));
-
-            return result;
-        }
+        // a lazy entity defers reading its properties until they are accessed
+        if (value instanceof Node || value instanceof Relationship)
+            return EmbeddedDatabaseEntityImpl.from((PropertyContainer) value, lazyEntities);
 
         if (value instanceof Path) {
 
@@ -94,74 +148,35 @@ public final class EmbeddedDatabaseQueryRowImpl
             Path path = ((Path) value);
 
             for (PropertyContainer container : path)
-                result.add(normalize(container));
+                result.add(normalize(container, lazyEntities));
 
-            return result;
+            return Collections.unmodifiableList(result);
         }
 
         if (value instanceof Collection<?>) {
 
-            List<Object> result = new ArrayList<>();
             Collection<?> collection = ((Collection<?>) value);
+            Object[] result = new Object[collection.size()];
+            int i = 0;
 
             for (Object item : collection)
-                result.add(normalize(item));
+                result[i++] = normalize(item, lazyEntities);
 
-            return result;
+            return Collections.unmodifiableList(Arrays.asList(result));
         }
 
         if (value.getClass().isArray()) {
 
-            List<Object> result = new ArrayList<>();
             int length = Array.getLength(value);
+            Object[] result = new Object[length];
 
             for (int i = 0; i < length; i++)
-                result.add(normalize(Array.get(value, i)));
+                result[i] = normalize(Array.get(value, i), lazyEntities);
 
-            return result;
+            return Collections.unmodifiableList(Arrays.asList(result));
         }
 
         throw new IllegalArgumentException("Cannot normalize value "
                 + value + " (" + value.getClass().getName() + ").");
     }
-
-    private Map<String, Object> copy(Map<String, Object> data) {
-
-        Map<String, Object> result = new LinkedHashMap<>();
-
-        for (Map.Entry<String, Object> entry : data.entrySet())
-            result.put(entry.getKey(), copy(entry.getValue()));
-
-        return result;
-    }
-
-    private Object copy(Object value) {
-
-        if (value == null)
-            return null;
-
-        if (value instanceof Map<?, ?>) {
-
-            Map<Object, Object> result = new LinkedHashMap<>();
-            Map<?, ?> map = ((Map<?, ?>) value);
-
-            for (Map.Entry entry : map.entrySet())
-                result.put(entry.getKey(), copy(entry.getValue()));
-
-            return result;
-        }
-
-        if (value instanceof Collection<?>) {
-
-            List<Object> list = new ArrayList<>();
-            Collection<?> collection = ((Collection<?>) value);
-
-            for (Object item : collection)
-                list.add(copy(item));
-
-            return list;
-        }
-
-        return value;
-    }
 }
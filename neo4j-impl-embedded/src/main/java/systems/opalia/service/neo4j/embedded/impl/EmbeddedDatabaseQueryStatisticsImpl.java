@@ -7,70 +7,93 @@ import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics
 public final class EmbeddedDatabaseQueryStatisticsImpl
         implements EmbeddedDatabaseQueryStatistics {
 
-    private final QueryStatistics statistics;
+    // the values are copied once, so that reading them later neither calls into Neo4j nor keeps the result alive
+    private final int nodesCreated;
+    private final int nodesDeleted;
+    private final int relationshipsCreated;
+    private final int relationshipsDeleted;
+    private final int propertiesSet;
+    private final int labelsAdded;
+    private final int labelsRemoved;
+    private final int indexesAdded;
+    private final int indexesRemoved;
+    private final int constraintsAdded;
+    private final int constraintsRemoved;
+    private final boolean containsUpdates;
 
     EmbeddedDatabaseQueryStatisticsImpl(QueryStatistics statistics) {
 
-        this.statistics = statistics;
+        this.nodesCreated = statistics.getNodesCreated();
+        this.nodesDeleted = statistics.getNodesDeleted();
+        this.relationshipsCreated = statistics.getRelationshipsCreated();
+        this.relationshipsDeleted = statistics.getRelationshipsDeleted();
+        this.propertiesSet = statistics.getPropertiesSet();
+        this.labelsAdded = statistics.getLabelsAdded();
+        this.labelsRemoved = statistics.getLabelsRemoved();
+        this.indexesAdded = statistics.getIndexesAdded();
+        this.indexesRemoved = statistics.getIndexesRemoved();
+        this.constraintsAdded = statistics.getConstraintsAdded();
+        this.constraintsRemoved = statistics.getConstraintsRemoved();
+        this.containsUpdates = statistics.containsUpdates();
     }
 
     public int getNodesCreated() {
 
-        return statistics.getNodesCreated();
+        return nodesCreated;
     }
 
     public int getNodesDeleted() {
 
-        return statistics.getNodesDeleted();
+        return nodesDeleted;
     }
 
     public int getRelationshipsCreated() {
 
-        return statistics.getRelationshipsCreated();
+        return relationshipsCreated;
     }
 
     public int getRelationshipsDeleted() {
 
-        return statistics.getRelationshipsDeleted();
+        return relationshipsDeleted;
     }
 
     public int getPropertiesSet() {
 
-        return statistics.getPropertiesSet();
+        return propertiesSet;
     }
 
     public int getLabelsAdded() {
 
-        return statistics.getLabelsAdded();
+        return labelsAdded;
     }
 
     public int getLabelsRemoved() {
 
-        return statistics.getLabelsRemoved();
+        return labelsRemoved;
     }
 
     public int getIndexesAdded() {
 
-        return statistics.getIndexesAdded();
+        return indexesAdded;
     }
 
     public int getIndexesRemoved() {
 
-        return statistics.getIndexesRemoved();
+        return indexesRemoved;
     }
 
     public int getConstraintsAdded() {
 
-        return statistics.getConstraintsAdded();
+        return constraintsAdded;
     }
 
     public int getConstraintsRemoved() {
 
-        return statistics.getConstraintsRemoved();
+        return constraintsRemoved;
     }
 
     public boolean containsUpdates() {
 
-        return statistics.containsUpdates();
+        return containsUpdates;
     }
 }
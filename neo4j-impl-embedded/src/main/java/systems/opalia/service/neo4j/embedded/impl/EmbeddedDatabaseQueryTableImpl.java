@@ -1,7 +1,8 @@
 package systems.opalia.service.neo4j.embedded.impl;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryTable;
@@ -11,16 +12,21 @@ public final class EmbeddedDatabaseQueryTableImpl
         implements EmbeddedDatabaseQueryTable {
 
     private final EmbeddedDatabaseQueryStatistics statistics;
-    private final List<String> columns;
+    private final EmbeddedDatabaseQueryHeader header;
     private final List<EmbeddedDatabaseQueryRow> rows;
+    private final boolean readOnly;
+    private final EmbeddedDatabaseSpilledRows spilled;
 
     EmbeddedDatabaseQueryTableImpl(EmbeddedDatabaseQueryStatistics statistics,
-                                   List<String> columns,
-                                   List<EmbeddedDatabaseQueryRow> rows) {
+                                   EmbeddedDatabaseQueryHeader header,
+                                   List<EmbeddedDatabaseQueryRow> rows,
+                                   boolean readOnly) {
 
         this.statistics = statistics;
-        this.columns = columns;
-        this.rows = rows;
+        this.header = header;
+        this.rows = Collections.unmodifiableList(rows);
+        this.readOnly = readOnly;
+        this.spilled = rows instanceof EmbeddedDatabaseSpilledRows ? (EmbeddedDatabaseSpilledRows) rows : null;
     }
 
     public EmbeddedDatabaseQueryStatistics getStatistics() {
@@ -28,13 +34,34 @@ public final class EmbeddedDatabaseQueryTableImpl
         return statistics;
     }
 
+    public EmbeddedDatabaseQueryHeader getHeader() {
+
+        return header;
+    }
+
     public List<String> getColumns() {
 
-        return new ArrayList<>(columns);
+        return header.getColumns();
     }
 
     public List<EmbeddedDatabaseQueryRow> getRows() {
 
-        return new ArrayList<>(rows);
+        return rows;
+    }
+
+    public boolean isReadOnly() {
+
+        return readOnly;
+    }
+
+    public boolean isSpilled() {
+
+        return spilled != null;
+    }
+
+    public void close() {
+
+        if (spilled != null)
+            spilled.close();
     }
 }
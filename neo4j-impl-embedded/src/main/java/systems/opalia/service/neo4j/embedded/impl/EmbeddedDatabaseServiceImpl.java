@@ -1,10 +1,17 @@
 package systems.opalia.service.neo4j.embedded.impl;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ScheduledFuture;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionType;
 import org.neo4j.graphdb.Result;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabasePreparedStatement;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryColumnTable;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryCursor;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryStatistics;
 import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryTable;
@@ -15,26 +22,227 @@ public final class EmbeddedDatabaseServiceImpl
         implements EmbeddedDatabaseService {
 
     private final GraphDatabaseService database;
+    private final EmbeddedDatabaseSlowQueryLog slowQueryLog;
+    private final EmbeddedDatabaseTransactionContext context;
+    private final long statementTimeout;
+    private final boolean lazyEntities;
+    private final EmbeddedDatabaseSpillStore spillStore;
 
-    EmbeddedDatabaseServiceImpl(GraphDatabaseService database) {
+    EmbeddedDatabaseServiceImpl(GraphDatabaseService database,
+                                EmbeddedDatabaseSlowQueryLog slowQueryLog,
+                                EmbeddedDatabaseTransactionContext context,
+                                long statementTimeout,
+                                boolean lazyEntities,
+                                EmbeddedDatabaseSpillStore spillStore) {
 
         this.database = database;
+        this.slowQueryLog = slowQueryLog;
+        this.context = context;
+        this.statementTimeout = statementTimeout;
+        this.lazyEntities = lazyEntities;
+        this.spillStore = spillStore;
     }
 
     public EmbeddedDatabaseQueryTable execute(String clause, Map<String, Object> parameters) {
 
-        Result result = database.execute(clause, parameters);
+        ScheduledFuture<?> timer = startTimer();
 
-        EmbeddedDatabaseQueryStatistics statistics =
-                new EmbeddedDatabaseQueryStatisticsImpl(result.getQueryStatistics());
+        try {
 
-        List<String> columns = result.columns();
+            long start = System.nanoTime();
+            Result result = database.execute(clause, parameters);
 
-        List<EmbeddedDatabaseQueryRow> rows =
-                result.stream()
-                        .map((x) -> new EmbeddedDatabaseQueryRowImpl(columns, x))
-                        .collect(Collectors.toList());
+            EmbeddedDatabaseQueryHeader header = new EmbeddedDatabaseQueryHeaderImpl(result.columns());
 
-        return new EmbeddedDatabaseQueryTableImpl(statistics, columns, rows);
+            ArrayList<EmbeddedDatabaseQueryRow> rows = new ArrayList<>();
+            EmbeddedDatabaseSpillWriter[] spill = new EmbeddedDatabaseSpillWriter[1];
+
+            try {
+
+                // the visitor reads the values column by column without building a map per row
+                result.accept((Result.ResultVisitor<RuntimeException>) row -> {
+
+                    EmbeddedDatabaseQueryRow normalized = EmbeddedDatabaseQueryRowImpl.from(header, row, lazyEntities);
+
+                    if (spill[0] != null) {
+
+                        spill[0].write(normalized);
+
+                    } else {
+
+                        rows.add(normalized);
+
+                        // above the threshold the rows are moved into a file and only the mapped file stays in memory
+                        if (spillStore.exceeds(rows.size())) {
+
+                            spill[0] = spillStore.newWriter(header);
+
+                            for (EmbeddedDatabaseQueryRow spilled : rows)
+                                spill[0].write(spilled);
+
+                            rows.clear();
+                            rows.trimToSize();
+                        }
+                    }
+
+                    return true;
+                });
+
+            } catch (RuntimeException e) {
+
+                if (spill[0] != null)
+                    spill[0].abort();
+
+                throw e;
+            }
+
+            List<EmbeddedDatabaseQueryRow> table = spill[0] != null ? spill[0].finish() : rows;
+
+            // the statistics are taken after the result is consumed, so that they are complete
+            EmbeddedDatabaseQueryStatistics statistics =
+                    new EmbeddedDatabaseQueryStatisticsImpl(result.getQueryStatistics());
+
+            long duration = System.nanoTime() - start;
+
+            if (slowQueryLog.isSlow(duration))
+                slowQueryLog.log(clause, parameters, result, duration, table.size());
+
+            boolean readOnly = result.getQueryExecutionType().queryType() == QueryExecutionType.QueryType.READ_ONLY;
+
+            return new EmbeddedDatabaseQueryTableImpl(statistics, header, table, readOnly);
+
+        } finally {
+
+            stopTimer(timer);
+        }
+    }
+
+    public EmbeddedDatabaseQueryColumnTable executeColumnar(String clause, Map<String, Object> parameters) {
+
+        ScheduledFuture<?> timer = startTimer();
+
+        try {
+
+            long start = System.nanoTime();
+            Result result = database.execute(clause, parameters);
+
+            EmbeddedDatabaseQueryHeader header = new EmbeddedDatabaseQueryHeaderImpl(result.columns());
+            EmbeddedDatabaseQueryColumnImpl[] columns = new EmbeddedDatabaseQueryColumnImpl[header.size()];
+
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = new EmbeddedDatabaseQueryColumnImpl(header.getColumn(i), lazyEntities);
+
+            int[] rows = new int[1];
+
+            // numbers and truth values are copied into primitive arrays, so they are not retained as boxed objects
+            result.accept((Result.ResultVisitor<RuntimeException>) row -> {
+
+                for (int i = 0; i < columns.length; i++)
+                    columns[i].add(row.get(header.getColumn(i)));
+
+                rows[0]++;
+
+                return true;
+            });
+
+            EmbeddedDatabaseQueryStatistics statistics =
+                    new EmbeddedDatabaseQueryStatisticsImpl(result.getQueryStatistics());
+
+            long duration = System.nanoTime() - start;
+
+            if (slowQueryLog.isSlow(duration))
+                slowQueryLog.log(clause, parameters, result, duration, rows[0]);
+
+            return new EmbeddedDatabaseQueryColumnTableImpl(statistics, header, columns, rows[0]);
+
+        } finally {
+
+            stopTimer(timer);
+        }
+    }
+
+    public EmbeddedDatabaseQueryCursor stream(String clause, Map<String, Object> parameters) {
+
+        long start = System.nanoTime();
+        ScheduledFuture<?> timer = startTimer();
+
+        try {
+
+            // the timer of a streamed statement is stopped when the cursor is closed
+            return new EmbeddedDatabaseQueryCursorImpl(
+                    database.execute(clause, parameters), clause, parameters, slowQueryLog, start, timer, lazyEntities);
+
+        } catch (RuntimeException e) {
+
+            stopTimer(timer);
+
+            throw e;
+        }
+    }
+
+    public EmbeddedDatabaseQueryStatistics executeUpdate(String clause, Map<String, Object> parameters) {
+
+        ScheduledFuture<?> timer = startTimer();
+
+        try {
+
+            long start = System.nanoTime();
+            Result result = database.execute(clause, parameters);
+
+            // the statistics are only complete after the result is consumed
+            long[] rows = new long[1];
+
+            result.accept((Result.ResultVisitor<RuntimeException>) row -> {
+
+                rows[0]++;
+
+                return true;
+            });
+
+            long duration = System.nanoTime() - start;
+
+            if (slowQueryLog.isSlow(duration))
+                slowQueryLog.log(clause, parameters, result, duration, rows[0]);
+
+            return new EmbeddedDatabaseQueryStatisticsImpl(result.getQueryStatistics());
+
+        } finally {
+
+            stopTimer(timer);
+        }
+    }
+
+    public EmbeddedDatabaseService withStatementTimeout(long timeout) {
+
+        return new EmbeddedDatabaseServiceImpl(database, slowQueryLog, context, timeout, lazyEntities, spillStore);
+    }
+
+    public EmbeddedDatabasePreparedStatement prepare(String clause) {
+
+        List<String> names = EmbeddedDatabasePreparedStatementImpl.parseParameterNames(clause);
+        Map<String, Object> parameters = new HashMap<>();
+
+        for (String name : names)
+            parameters.put(name, null);
+
+        // EXPLAIN only plans the statement; the plan stays in the query cache of the database for later executions
+        Result result = database.execute("EXPLAIN " + clause, parameters);
+
+        boolean readOnly = result.getQueryExecutionType().queryType() == QueryExecutionType.QueryType.READ_ONLY;
+
+        result.close();
+
+        return new EmbeddedDatabasePreparedStatementImpl(clause, names, readOnly);
+    }
+
+    private ScheduledFuture<?> startTimer() {
+
+        return statementTimeout > 0 ? context.scheduleTimeout(statementTimeout) : null;
+    }
+
+    static void stopTimer(ScheduledFuture<?> timer) {
+
+        if (timer != null)
+            timer.cancel(false);
     }
 }
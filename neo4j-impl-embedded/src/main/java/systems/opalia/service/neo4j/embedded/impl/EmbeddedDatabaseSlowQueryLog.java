@@ -0,0 +1,133 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.neo4j.graphdb.ExecutionPlanDescription;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionType;
+import org.neo4j.graphdb.Result;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseLogger;
+
+
+public final class EmbeddedDatabaseSlowQueryLog {
+
+    private final GraphDatabaseService database;
+    private final EmbeddedDatabaseLogger logger;
+    private final long thresholdNanos;
+    private final boolean profile;
+
+    EmbeddedDatabaseSlowQueryLog(GraphDatabaseService database,
+                                 EmbeddedDatabaseLogger logger,
+                                 long threshold,
+                                 boolean profile) {
+
+        this.database = database;
+        this.logger = logger;
+        this.thresholdNanos = threshold < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(threshold);
+        this.profile = profile;
+    }
+
+    // Returns true if a statement that took the specified time must be logged; this is the only cost on fast queries.
+    boolean isSlow(long nanos) {
+
+        return nanos >= thresholdNanos;
+    }
+
+    void log(String clause, Map<String, Object> parameters, Result result, long nanos, long rows) {
+
+        if (!logger.isWarningEnabled())
+            return;
+
+        ExecutionPlanDescription plan = null;
+
+        try {
+
+            if (profile &&
+                    !isExplained(clause) &&
+                    result.getQueryExecutionType().queryType() == QueryExecutionType.QueryType.READ_ONLY) {
+
+                // only read-only statements are executed a second time to collect the profiler statistics
+                Result profiled = database.execute("PROFILE " + clause, parameters);
+
+                profiled.accept((Result.ResultVisitor<RuntimeException>) row -> true);
+                plan = profiled.getExecutionPlanDescription();
+
+            } else {
+
+                plan = result.getExecutionPlanDescription();
+            }
+
+        } catch (RuntimeException e) {
+
+            logger.debug("Cannot capture the execution plan of a slow query.", e);
+        }
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("A slow query was performed in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(nanos))
+                .append(" ms with ")
+                .append(rows)
+                .append(" rows and ")
+                .append(plan != null && plan.hasProfilerStatistics() ? Long.toString(dbHits(plan)) : "unknown")
+                .append(" db hits.\nquery: ")
+                .append(clause.trim().replaceAll("\\s+", " "))
+                .append("\nparameters: ")
+                .append(shape(parameters));
+
+        if (plan != null)
+            builder.append("\nplan:\n").append(plan.toString());
+
+        logger.warning(builder.toString());
+    }
+
+    private boolean isExplained(String clause) {
+
+        String prefix = clause.trim().toUpperCase();
+
+        return prefix.startsWith("EXPLAIN") || prefix.startsWith("PROFILE");
+    }
+
+    private long dbHits(ExecutionPlanDescription plan) {
+
+        long hits = plan.getProfilerStatistics().getDbHits();
+
+        for (ExecutionPlanDescription child : plan.getChildren())
+            hits += dbHits(child);
+
+        return hits;
+    }
+
+    // Describes the types of the parameters without revealing their values.
+    private String shape(Object value) {
+
+        if (value == null)
+            return "null";
+
+        if (value instanceof Map<?, ?>) {
+
+            StringBuilder builder = new StringBuilder("{");
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+
+                if (builder.length() > 1)
+                    builder.append(", ");
+
+                builder.append(entry.getKey()).append(": ").append(shape(entry.getValue()));
+            }
+
+            return builder.append("}").toString();
+        }
+
+        if (value instanceof Collection<?>) {
+
+            Collection<?> collection = (Collection<?>) value;
+
+            return "List(" + collection.size() + ")" +
+                    (collection.isEmpty() ? "" : "[" + shape(collection.iterator().next()) + "]");
+        }
+
+        return value.getClass().getSimpleName();
+    }
+}
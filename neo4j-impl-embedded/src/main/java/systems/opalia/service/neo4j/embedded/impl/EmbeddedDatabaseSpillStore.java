@@ -0,0 +1,178 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.MappedByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
+
+
+// Creates the files that hold results with more rows than the threshold. The files of a previous run are deleted on
+// startup, since a crashed process cannot delete them itself.
+final class EmbeddedDatabaseSpillStore {
+
+    private final Path directory;
+    private final int threshold;
+    private final long maxBytes;
+    private final int segmentShift;
+
+    // the bytes of all spilled results that are not unmapped yet
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    // the releases of all mapped results; the release of a result that became unreachable without being closed is
+    // queued and run by the next reservation, so that its bytes are available again for new results
+    private final Set<Release> mapped = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Object> unreachable = new ReferenceQueue<>();
+
+    EmbeddedDatabaseSpillStore(Path directory, int threshold, long maxBytes) {
+
+        this(directory, threshold, maxBytes, 28);
+    }
+
+    // the segments are 2^segmentShift bytes large; small segments let tests cross their boundaries with few rows
+    EmbeddedDatabaseSpillStore(Path directory, int threshold, long maxBytes, int segmentShift) {
+
+        if (segmentShift < 3 || segmentShift > 30)
+            throw new IllegalArgumentException("Expect segment shift between 3 and 30.");
+
+        this.directory = directory;
+        this.threshold = threshold;
+        this.maxBytes = maxBytes;
+        this.segmentShift = segmentShift;
+
+        if (threshold > 0) {
+
+            try {
+
+                Files.createDirectories(directory);
+
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spill")) {
+
+                    for (Path path : stream)
+                        Files.deleteIfExists(path);
+                }
+
+            } catch (IOException e) {
+
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Returns true if a result with this number of rows should be spilled.
+    boolean exceeds(int rows) {
+
+        return threshold > 0 && rows > threshold;
+    }
+
+    EmbeddedDatabaseSpillWriter newWriter(EmbeddedDatabaseQueryHeader header) {
+
+        try {
+
+            return new EmbeddedDatabaseSpillWriter(
+                    this,
+                    header,
+                    segmentShift,
+                    Files.createTempFile(directory, "rows-", ".spill"),
+                    Files.createTempFile(directory, "index-", ".spill"));
+
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reserves space for spilled bytes or fails if all spilled results together would exceed the limit.
+    void reserve(long bytes) {
+
+        expunge();
+
+        if (usedBytes.addAndGet(bytes) > maxBytes) {
+
+            usedBytes.addAndGet(-bytes);
+
+            throw new IllegalStateException("Cannot spill more than " + maxBytes + " bytes of results at once.");
+        }
+    }
+
+    void release(long bytes) {
+
+        usedBytes.addAndGet(-bytes);
+    }
+
+    long getUsedBytes() {
+
+        return usedBytes.get();
+    }
+
+    // Tracks the mapped segments of a result; they are released by the returned release or once the rows become
+    // unreachable.
+    Release register(Object rows, MappedByteBuffer[] data, MappedByteBuffer[] index, long bytes) {
+
+        Release release = new Release(rows, unreachable, this, data, index, bytes);
+
+        mapped.add(release);
+
+        return release;
+    }
+
+    private void expunge() {
+
+        Reference<?> reference;
+
+        while ((reference = unreachable.poll()) != null)
+            ((Release) reference).run();
+    }
+
+    // must not refer to the rows, otherwise they never become phantom reachable
+    static final class Release
+            extends PhantomReference<Object>
+            implements Runnable {
+
+        private final EmbeddedDatabaseSpillStore store;
+        private final MappedByteBuffer[] data;
+        private final MappedByteBuffer[] index;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Release(Object rows,
+                        ReferenceQueue<Object> queue,
+                        EmbeddedDatabaseSpillStore store,
+                        MappedByteBuffer[] data,
+                        MappedByteBuffer[] index,
+                        long bytes) {
+
+            super(rows, queue);
+
+            this.store = store;
+            this.data = data;
+            this.index = index;
+            this.bytes = bytes;
+        }
+
+        public void run() {
+
+            if (!released.compareAndSet(false, true))
+                return;
+
+            store.mapped.remove(this);
+
+            for (MappedByteBuffer segment : data)
+                EmbeddedDatabaseSpillWriter.unmap(segment);
+
+            for (MappedByteBuffer segment : index)
+                EmbeddedDatabaseSpillWriter.unmap(segment);
+
+            store.release(bytes);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
+
+
+// Encodes rows into a data file and their offsets into an index file. A row never crosses the boundary of a
+// segment, so that each row can be decoded from a single mapped buffer.
+final class EmbeddedDatabaseSpillWriter {
+
+    static final byte tagNull = 0;
+    static final byte tagFalse = 1;
+    static final byte tagTrue = 2;
+    static final byte tagByte = 3;
+    static final byte tagShort = 4;
+    static final byte tagInteger = 5;
+    static final byte tagLong = 6;
+    static final byte tagFloat = 7;
+    static final byte tagDouble = 8;
+    static final byte tagCharacter = 9;
+    static final byte tagString = 10;
+    static final byte tagList = 11;
+    static final byte tagEntity = 12;
+
+    private static final Consumer<ByteBuffer> unmapper = lookupUnmapper();
+
+    private final EmbeddedDatabaseSpillStore store;
+    private final EmbeddedDatabaseQueryHeader header;
+    private final int segmentShift;
+    private final long segmentSize;
+    private final Path dataFile;
+    private final Path indexFile;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    private ByteBuffer row = ByteBuffer.allocate(4096);
+    private long offset = 0;
+    private int size = 0;
+    private long reserved = 0;
+
+    EmbeddedDatabaseSpillWriter(EmbeddedDatabaseSpillStore store,
+                                EmbeddedDatabaseQueryHeader header,
+                                int segmentShift,
+                                Path dataFile,
+                                Path indexFile)
+            throws IOException {
+
+        this.store = store;
+        this.header = header;
+        this.segmentShift = segmentShift;
+        this.segmentSize = 1L << segmentShift;
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.data = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    void write(EmbeddedDatabaseQueryRow value) {
+
+        try {
+
+            row.clear();
+
+            for (int i = 0; i < header.size(); i++)
+                encode(value.getValue(i));
+
+            row.flip();
+
+            if (row.remaining() > segmentSize)
+                throw new IllegalStateException("Cannot spill a row larger than " + segmentSize + " bytes.");
+
+            long start = offset;
+
+            // the row starts in the next segment if it does not fit into the current one
+            if ((start & (segmentSize - 1)) + row.remaining() > segmentSize)
+                start = (start | (segmentSize - 1)) + 1;
+
+            long bytes = start - offset + row.remaining() + Long.BYTES;
+
+            store.reserve(bytes);
+            reserved += bytes;
+            offset = start;
+
+            if (indexBuffer.remaining() < Long.BYTES)
+                flushIndex();
+
+            indexBuffer.putLong(offset);
+
+            while (row.hasRemaining())
+                offset += data.write(row, offset);
+
+            size++;
+
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Maps the files and deletes them; the mapped memory is unmapped when the returned rows are closed or become
+    // unreachable.
+    EmbeddedDatabaseSpilledRows finish() {
+
+        MappedByteBuffer[] dataSegments = new MappedByteBuffer[0];
+
+        try {
+
+            flushIndex();
+
+            dataSegments = map(data, offset);
+
+            MappedByteBuffer[] indexSegments = map(index, (long) size * Long.BYTES);
+
+            // the reserved bytes are released together with the mapped memory
+            return new EmbeddedDatabaseSpilledRows(
+                    header, size, segmentShift, dataSegments, indexSegments, store, reserved);
+
+        } catch (IOException e) {
+
+            for (MappedByteBuffer segment : dataSegments)
+                unmap(segment);
+
+            store.release(reserved);
+
+            throw new UncheckedIOException(e);
+
+        } finally {
+
+            delete();
+        }
+    }
+
+    // Deletes the files of a result that is not finished and releases its reserved bytes.
+    void abort() {
+
+        delete();
+        store.release(reserved);
+    }
+
+    // Unmaps a buffer right away if the platform allows it; it must not be accessed afterwards.
+    static void unmap(MappedByteBuffer buffer) {
+
+        unmapper.accept(buffer);
+    }
+
+    // Java 9 and later unmap through Unsafe.invokeCleaner, Java 8 through the cleaner of the direct buffer. Both are
+    // loaded reflectively from the boot class path, so that the bundle neither imports internal packages nor needs boot
+    // delegation for them. Without either, a buffer is only unmapped when it is collected.
+    private static Consumer<ByteBuffer> lookupUnmapper() {
+
+        try {
+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe", true, null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+
+            field.setAccessible(true);
+
+            Object unsafe = field.get(null);
+
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // not available before Java 9
+        }
+
+        try {
+
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer", true, null).getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner", true, null).getMethod("clean");
+
+            return buffer -> {
+
+                Object value = invoke(cleaner, buffer);
+
+                if (value != null)
+                    invoke(clean, value);
+            };
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+
+            return buffer -> {
+            };
+        }
+    }
+
+    // a buffer that cannot be unmapped is left to the garbage collector
+    private static Object invoke(Method method, Object target, Object... arguments) {
+
+        try {
+
+            return method.invoke(target, arguments);
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+
+            return null;
+        }
+    }
+
+    // on platforms that cannot delete a mapped file, the files are deleted on exit or on next startup
+    private void delete() {
+
+        for (FileChannel channel : new FileChannel[]{data, index}) {
+
+            try {
+
+                channel.close();
+
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+        }
+
+        for (Path path : new Path[]{dataFile, indexFile}) {
+
+            try {
+
+                Files.deleteIfExists(path);
+
+            } catch (IOException e) {
+
+                path.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private void flushIndex()
+            throws IOException {
+
+        indexBuffer.flip();
+
+        while (indexBuffer.hasRemaining())
+            index.write(indexBuffer);
+
+        indexBuffer.clear();
+    }
+
+    private MappedByteBuffer[] map(FileChannel channel, long length)
+            throws IOException {
+
+        MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + segmentSize - 1) >>> segmentShift)];
+
+        for (int i = 0; i < segments.length; i++) {
+
+            long position = (long) i << segmentShift;
+
+            segments[i] =
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, length - position));
+        }
+
+        return segments;
+    }
+
+    private void encode(Object value) {
+
+        if (value == null) {
+
+            put(tagNull);
+
+        } else if (value instanceof Boolean) {
+
+            put((Boolean) value ? tagTrue : tagFalse);
+
+        } else if (value instanceof Byte) {
+
+            ensure(2);
+            row.put(tagByte).put((Byte) value);
+
+        } else if (value instanceof Short) {
+
+            ensure(3);
+            row.put(tagShort).putShort((Short) value);
+
+        } else if (value instanceof Integer) {
+
+            ensure(5);
+            row.put(tagInteger).putInt((Integer) value);
+
+        } else if (value instanceof Long) {
+
+            ensure(9);
+            row.put(tagLong).putLong((Long) value);
+
+        } else if (value instanceof Float) {
+
+            ensure(5);
+            row.put(tagFloat).putFloat((Float) value);
+
+        } else if (value instanceof Double) {
+
+            ensure(9);
+            row.put(tagDouble).putDouble((Double) value);
+
+        } else if (value instanceof Character) {
+
+            ensure(3);
+            row.put(tagCharacter).putChar((Character) value);
+
+        } else if (value instanceof String) {
+
+            put(tagString);
+            putString((String) value);
+
+        } else if (value instanceof EmbeddedDatabaseEntityImpl) {
+
+            // a lazy entity reads all of its properties here, since the spilled row outlives the transaction
+            EmbeddedDatabaseEntityImpl entity = (EmbeddedDatabaseEntityImpl) value;
+
+            ensure(14);
+            row.put(tagEntity).putLong(entity.getId()).put(entity.isNode() ? tagTrue : tagFalse);
+            row.putInt(entity.getLabels().size());
+
+            for (String label : entity.getLabels())
+                putString(label);
+
+            putString(entity.getType());
+            ensure(4);
+            row.putInt(entity.size());
+
+            for (Map.Entry<String, Object> entry : entity.entrySet()) {
+
+                putString(entry.getKey());
+                encode(entry.getValue());
+            }
+
+        } else if (value instanceof Collection<?>) {
+
+            Collection<?> collection = (Collection<?>) value;
+
+            ensure(5);
+            row.put(tagList).putInt(collection.size());
+
+            for (Object item : collection)
+                encode(item);
+
+        } else {
+
+            throw new IllegalArgumentException("Cannot spill value "
+                    + value + " (" + value.getClass().getName() + ").");
+        }
+    }
+
+    private void put(byte tag) {
+
+        ensure(1);
+        row.put(tag);
+    }
+
+    // a null string is written with a negative length
+    private void putString(String value) {
+
+        if (value == null) {
+
+            ensure(4);
+            row.putInt(-1);
+
+        } else {
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            ensure(4 + bytes.length);
+            row.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private void ensure(int bytes) {
+
+        if (row.remaining() < bytes) {
+
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(row.capacity() * 2, row.position() + bytes));
+
+            row.flip();
+            grown.put(row);
+            row = grown;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
+
+import static systems.opalia.service.neo4j.embedded.impl.EmbeddedDatabaseSpillWriter.*;
+
+
+// Rows decoded on access from memory-mapped segments; only the row being read is held on the heap. The segments are
+// unmapped by close, or by the store once the rows have become unreachable.
+final class EmbeddedDatabaseSpilledRows
+        extends AbstractList<EmbeddedDatabaseQueryRow>
+        implements RandomAccess {
+
+    private final EmbeddedDatabaseQueryHeader header;
+    private final int size;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final int indexShift;
+    private final MappedByteBuffer[] data;
+    private final MappedByteBuffer[] index;
+    private final EmbeddedDatabaseSpillStore.Release release;
+
+    private volatile boolean closed;
+
+    EmbeddedDatabaseSpilledRows(EmbeddedDatabaseQueryHeader header,
+                                int size,
+                                int segmentShift,
+                                MappedByteBuffer[] data,
+                                MappedByteBuffer[] index,
+                                EmbeddedDatabaseSpillStore store,
+                                long bytes) {
+
+        this.header = header;
+        this.size = size;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.indexShift = segmentShift - 3;
+        this.data = data;
+        this.index = index;
+        this.release = store.register(this, data, index, bytes);
+    }
+
+    // Unmaps the segments before the rows become unreachable; the rows cannot be read afterwards, and must not be read
+    // concurrently.
+    void close() {
+
+        closed = true;
+        release.run();
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    public EmbeddedDatabaseQueryRow get(int row) {
+
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for " + size + " rows.");
+
+        if (closed)
+            throw new IllegalStateException("Cannot read rows of a spilled result that is closed.");
+
+        long offset = index[row >>> indexShift].getLong((row & ((1 << indexShift) - 1)) << 3);
+
+        Reader reader = new Reader(data[(int) (offset >>> segmentShift)], (int) (offset & segmentMask));
+        Object[] values = new Object[header.size()];
+
+        for (int i = 0; i < values.length; i++)
+            values[i] = reader.decode();
+
+        return EmbeddedDatabaseQueryRowImpl.of(header, values);
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        private Reader(ByteBuffer buffer, int position) {
+
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private Object decode() {
+
+            byte tag = buffer.get(position++);
+
+            switch (tag) {
+
+                case tagNull:
+                    return null;
+
+                case tagFalse:
+                    return false;
+
+                case tagTrue:
+                    return true;
+
+                case tagByte:
+                    return buffer.get(position++);
+
+                case tagShort: {
+
+                    short value = buffer.getShort(position);
+
+                    position += Short.BYTES;
+
+                    return value;
+                }
+
+                case tagInteger:
+                    return getInt();
+
+                case tagLong:
+                    return getLong();
+
+                case tagFloat: {
+
+                    float value = buffer.getFloat(position);
+
+                    position += Float.BYTES;
+
+                    return value;
+                }
+
+                case tagDouble: {
+
+                    double value = buffer.getDouble(position);
+
+                    position += Double.BYTES;
+
+                    return value;
+                }
+
+                case tagCharacter: {
+
+                    char value = buffer.getChar(position);
+
+                    position += Character.BYTES;
+
+                    return value;
+                }
+
+                case tagString:
+                    return getString();
+
+                case tagList: {
+
+                    Object[] result = new Object[getInt()];
+
+                    for (int i = 0; i < result.length; i++)
+                        result[i] = decode();
+
+                    return Collections.unmodifiableList(Arrays.asList(result));
+                }
+
+                case tagEntity: {
+
+                    long id = getLong();
+                    boolean node = buffer.get(position++) == tagTrue;
+                    String[] labels = new String[getInt()];
+
+                    for (int i = 0; i < labels.length; i++)
+                        labels[i] = getString();
+
+                    String type = getString();
+                    int count = getInt();
+                    Map<String, Object> properties = new LinkedHashMap<>();
+
+                    for (int i = 0; i < count; i++) {
+
+                        String key = getString();
+
+                        properties.put(key, decode());
+                    }
+
+                    return EmbeddedDatabaseEntityImpl.detached(
+                            id,
+                            node,
+                            Collections.unmodifiableList(Arrays.asList(labels)),
+                            type,
+                            Collections.unmodifiableMap(properties));
+                }
+
+                default:
+                    throw new IllegalStateException("Cannot decode spilled value with tag " + tag + ".");
+            }
+        }
+
+        private int getInt() {
+
+            int value = buffer.getInt(position);
+
+            position += Integer.BYTES;
+
+            return value;
+        }
+
+        private long getLong() {
+
+            long value = buffer.getLong(position);
+
+            position += Long.BYTES;
+
+            return value;
+        }
+
+        private String getString() {
+
+            int length = getInt();
+
+            if (length < 0)
+                return null;
+
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+
+            view.position(position);
+            view.get(bytes);
+            position += length;
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
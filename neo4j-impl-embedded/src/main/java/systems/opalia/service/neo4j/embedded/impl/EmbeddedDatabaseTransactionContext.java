@@ -0,0 +1,56 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.neo4j.graphdb.Transaction;
+
+
+// Holds the running attempt of a transaction, so that a statement timer can terminate it from another thread.
+final class EmbeddedDatabaseTransactionContext {
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Transaction transaction;
+    private volatile boolean timedOut;
+
+    EmbeddedDatabaseTransactionContext(ScheduledExecutorService scheduler) {
+
+        this.scheduler = scheduler;
+    }
+
+    void begin(Transaction transaction) {
+
+        this.transaction = transaction;
+    }
+
+    void end() {
+
+        transaction = null;
+        timedOut = false;
+    }
+
+    boolean isTimedOut() {
+
+        return timedOut;
+    }
+
+    ScheduledFuture<?> scheduleTimeout(long timeout) {
+
+        Transaction current = transaction;
+
+        if (current == null)
+            throw new IllegalStateException("Cannot execute a statement outside of a transaction.");
+
+        // Transaction.terminate only marks the transaction; the running statement stops at its next guard check
+        return scheduler.schedule(() -> {
+
+            if (transaction == current) {
+
+                timedOut = true;
+                current.terminate();
+            }
+
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,44 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class EmbeddedDatabasePreparedStatementTest {
+
+    @Test
+    public void findsParameters() {
+
+        assertEquals(Arrays.asList("name", "limit"),
+                names("MATCH (n:Person {name: $name}) RETURN n LIMIT $limit"));
+
+        assertEquals(Arrays.asList("p", "list", "q"),
+                names("MATCH (n) WHERE n.x = {p} AND n.y IN {list} RETURN {q} AS y, {list} AS z"));
+
+        assertEquals(Arrays.asList("rows", "skip"),
+                names("UNWIND {rows} AS row WITH row SKIP { skip } RETURN row"));
+    }
+
+    @Test
+    public void skipsLiteralsAndComments() {
+
+        assertEquals(Collections.singletonList("a"),
+                names("RETURN '$b', \"{c}\", `$d` // $e\n, $a /* {f} */"));
+    }
+
+    @Test
+    public void skipsMapLiteralsAndProjections() {
+
+        assertEquals(Collections.emptyList(), names("RETURN {a: 1}, n {friend}, n{.name, friend}, `n` {friend}"));
+        assertEquals(Collections.singletonList("friend"), names("MATCH (n) RETURN n {friend: $friend}"));
+    }
+
+    private List<String> names(String clause) {
+
+        return EmbeddedDatabasePreparedStatementImpl.parseParameterNames(clause);
+    }
+}
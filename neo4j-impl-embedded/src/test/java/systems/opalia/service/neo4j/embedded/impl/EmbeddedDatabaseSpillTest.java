@@ -0,0 +1,296 @@
+package systems.opalia.service.neo4j.embedded.impl;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseEntity;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryHeader;
+import systems.opalia.service.neo4j.embedded.api.EmbeddedDatabaseQueryRow;
+
+import static org.junit.Assert.*;
+
+
+public class EmbeddedDatabaseSpillTest {
+
+    // segments of 256 bytes hold only a few rows, so most rows are moved to the start of the next segment
+    private static final int segmentShift = 8;
+
+    private final EmbeddedDatabaseQueryHeader header =
+            new EmbeddedDatabaseQueryHeaderImpl(Arrays.asList("number", "string", "list", "entity"));
+
+    private Path directory;
+
+    @Before
+    public void setUp()
+            throws IOException {
+
+        directory = Files.createTempDirectory("neo4j-spill-test-");
+    }
+
+    @After
+    public void tearDown()
+            throws IOException {
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+
+            for (Path path : stream)
+                Files.delete(path);
+        }
+
+        Files.delete(directory);
+    }
+
+    @Test
+    public void roundTripAcrossSegmentBoundaries() {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 1, Long.MAX_VALUE, segmentShift);
+        EmbeddedDatabaseSpillWriter writer = store.newWriter(header);
+        List<Object[]> expected = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+
+            Object[] values = newValues(i);
+
+            writer.write(EmbeddedDatabaseQueryRowImpl.of(header, values));
+            expected.add(values);
+        }
+
+        EmbeddedDatabaseSpilledRows rows = writer.finish();
+
+        assertEquals(expected.size(), rows.size());
+        assertTrue(store.getUsedBytes() > 4L << segmentShift);
+        assertEquals(0, spillFiles());
+
+        for (int i = 0; i < expected.size(); i++) {
+
+            EmbeddedDatabaseQueryRow row = rows.get(i);
+            Object[] values = expected.get(i);
+
+            assertEquals(values[0], row.getValue(0));
+            assertEquals(values[1], row.getValue(1));
+            assertEquals(values[2], row.getValue(2));
+            assertEntity((EmbeddedDatabaseEntity) values[3], (EmbeddedDatabaseEntity) row.getValue(3));
+        }
+
+        rows.close();
+
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedRowsCannotBeRead() {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 1, Long.MAX_VALUE, segmentShift);
+        EmbeddedDatabaseSpilledRows rows = spill(store, 10);
+
+        rows.close();
+        rows.get(0);
+    }
+
+    @Test
+    public void closingTableReleasesSpilledRows() {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 1, Long.MAX_VALUE, segmentShift);
+        EmbeddedDatabaseQueryTableImpl table =
+                new EmbeddedDatabaseQueryTableImpl(null, header, spill(store, 10), true);
+
+        assertTrue(store.getUsedBytes() > 0);
+
+        table.close();
+
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test
+    public void unreachableRowsAreReleasedByNextReservation()
+            throws InterruptedException {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 1, Long.MAX_VALUE, segmentShift);
+
+        spill(store, 10);
+
+        assertTrue(store.getUsedBytes() > 0);
+
+        // each closed result reserves and releases its own bytes, so only the dropped result can remain
+        for (int i = 0; i < 100 && store.getUsedBytes() > 0; i++) {
+
+            System.gc();
+            Thread.sleep(10);
+            spill(store, 1).close();
+        }
+
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rowLargerThanSegmentFails() {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 1, Long.MAX_VALUE, segmentShift);
+        EmbeddedDatabaseSpillWriter writer = store.newWriter(header);
+        char[] text = new char[1 << segmentShift];
+
+        Arrays.fill(text, 'x');
+
+        try {
+
+            writer.write(EmbeddedDatabaseQueryRowImpl.of(header, new Object[]{0, new String(text), null, null}));
+
+        } finally {
+
+            writer.abort();
+        }
+    }
+
+    @Test
+    public void abortReleasesFilesAndBytes() {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 1, Long.MAX_VALUE, segmentShift);
+        EmbeddedDatabaseSpillWriter writer = store.newWriter(header);
+
+        for (int i = 0; i < 100; i++)
+            writer.write(EmbeddedDatabaseQueryRowImpl.of(header, newValues(i)));
+
+        assertTrue(store.getUsedBytes() > 0);
+        assertEquals(2, spillFiles());
+
+        writer.abort();
+
+        assertEquals(0, store.getUsedBytes());
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    public void limitOfSpilledBytesIsEnforced() {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 1, 1024, segmentShift);
+        EmbeddedDatabaseSpillWriter writer = store.newWriter(header);
+
+        try {
+
+            for (int i = 0; i < 100; i++)
+                writer.write(EmbeddedDatabaseQueryRowImpl.of(header, newValues(i)));
+
+            fail("Expect the limit of spilled bytes to be exceeded.");
+
+        } catch (IllegalStateException e) {
+
+            writer.abort();
+        }
+
+        assertEquals(0, store.getUsedBytes());
+
+        // the released bytes can be used by the next result
+        spill(store, 2).close();
+
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test
+    public void thresholdIsExclusive() {
+
+        EmbeddedDatabaseSpillStore store = new EmbeddedDatabaseSpillStore(directory, 10, Long.MAX_VALUE);
+
+        assertFalse(store.exceeds(10));
+        assertTrue(store.exceeds(11));
+        assertFalse(new EmbeddedDatabaseSpillStore(directory, 0, Long.MAX_VALUE).exceeds(Integer.MAX_VALUE));
+    }
+
+    private EmbeddedDatabaseSpilledRows spill(EmbeddedDatabaseSpillStore store, int count) {
+
+        EmbeddedDatabaseSpillWriter writer = store.newWriter(header);
+
+        for (int i = 0; i < count; i++)
+            writer.write(EmbeddedDatabaseQueryRowImpl.of(header, newValues(i)));
+
+        return writer.finish();
+    }
+
+    // every third row has a null string and every other row a lazy entity that is read while it is spilled
+    private Object[] newValues(int i) {
+
+        String string = i % 3 == 0 ? null : "row " + i + " " + String.join("", Collections.nCopies(i % 7, "äß"));
+
+        List<Object> list =
+                Arrays.asList((long) i, Arrays.asList("nested", null, i * 0.5), Collections.emptyList(), i % 2 == 0);
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+
+        properties.put("name", "entity " + i);
+        properties.put("weight", (float) i);
+        properties.put("tags", Arrays.asList("a", "b"));
+
+        EmbeddedDatabaseEntity entity;
+
+        if (i % 2 == 0)
+            entity = EmbeddedDatabaseEntityImpl.detached(
+                    i, false, Collections.emptyList(), "KNOWS", Collections.unmodifiableMap(properties));
+        else
+            entity = EmbeddedDatabaseEntityImpl.from(newNode(i, properties), true);
+
+        return new Object[]{i, string, list, entity};
+    }
+
+    private Node newNode(long id, Map<String, Object> properties) {
+
+        // only the methods used by a lazy entity are implemented
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        return (Node) Proxy.newProxyInstance(classLoader, new Class<?>[]{Node.class}, (proxy, method, args) -> {
+
+            switch (method.getName()) {
+
+                case "getId":
+                    return id;
+
+                case "getLabels":
+                    return Collections.singletonList(Label.label("Person"));
+
+                case "getAllProperties":
+                    return new LinkedHashMap<>(properties);
+
+                case "getProperty":
+                    return properties.getOrDefault((String) args[0], args.length > 1 ? args[1] : null);
+
+                case "hasProperty":
+                    return properties.containsKey((String) args[0]);
+
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private void assertEntity(EmbeddedDatabaseEntity expected, EmbeddedDatabaseEntity actual) {
+
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.isNode(), actual.isNode());
+        assertEquals(expected.getLabels(), actual.getLabels());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(new HashMap<>(expected), new HashMap<>(actual));
+    }
+
+    private int spillFiles() {
+
+        int count = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spill")) {
+
+            for (Path ignored : stream)
+                count++;
+
+        } catch (IOException e) {
+
+            throw new AssertionError(e);
+        }
+
+        return count;
+    }
+}